@@ -58,6 +58,7 @@ public class TTT implements ComFrame.MessageListener {
         //sender.debug = true;
         //receiver.debug = true;
         receiver.setMsgListener(this);
+        sender.setTransmitListener(new SendToOp());
         receiver.startListening();
     }
 
@@ -106,7 +107,7 @@ public class TTT implements ComFrame.MessageListener {
                 break;
         }
         if (data != null) {
-            new SendToOp(data).start();
+            sender.sendAsync(data);
         }
     }
 
@@ -350,15 +351,15 @@ public class TTT implements ComFrame.MessageListener {
         }
     }
 
-    private class SendToOp extends Thread {
-        private byte[] data;
-
-        SendToOp(byte[] data) {
-            this.data = data;
-        }
+    /**
+     * the sender queues the messages and sends them on its own thread, this prepares the device
+     * before and restores it afterwards
+     */
+    private class SendToOp implements ComFrame.TransmitListener {
+        private int volume;
 
         @Override
-        public void run() {
+        public void onTransmitStart() {
             receiver.stopListening();
 
             // give the other side time to startListening receiving again...
@@ -371,10 +372,15 @@ public class TTT implements ComFrame.MessageListener {
             // to set the volume to max before starting to send
             AudioManager audioManager = (AudioManager) context.getSystemService(Context
                     .AUDIO_SERVICE);
-            int volume = audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+            volume = audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
             audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC), 0);
-            sender.send(data);
+        }
+
+        @Override
+        public void onTransmitEnd() {
             // now reset the volume again:
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context
+                    .AUDIO_SERVICE);
             audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volume, 0);
 
             receiver.startListening();
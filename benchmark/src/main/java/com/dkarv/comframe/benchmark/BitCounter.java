@@ -0,0 +1,22 @@
+package com.dkarv.comframe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * counts the bits processed by a benchmark, JMH reports them as bits per second next to the
+ * operations per second
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class BitCounter {
+    public long bits;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        bits = 0;
+    }
+}
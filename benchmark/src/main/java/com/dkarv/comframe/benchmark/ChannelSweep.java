@@ -0,0 +1,346 @@
+package com.dkarv.comframe.benchmark;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.ComFrameReceiver;
+import com.dkarv.comframe.library.ComFrameSender;
+import com.dkarv.comframe.library.audio.AudioSink;
+import com.dkarv.comframe.library.audio.AudioSource;
+import com.dkarv.comframe.library.audio.ChannelSimulator;
+import com.dkarv.comframe.library.hamming.HammingCode;
+import com.dkarv.comframe.library.sync.SyncWord;
+import com.dkarv.comframe.library.tools.CarrierPlanner;
+import com.dkarv.comframe.library.tools.FFT;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * sends frames from a {@link ComFrameSender} through a {@link ChannelSimulator} to a
+ * {@link ComFrameReceiver} and measures how many arrive, for every combination of snr,
+ * {@link HammingCode}, {@link SyncWord}, fftSize and frequency. one csv line per combination:
+ * <ul>
+ * <li>ber: wrong payload bits of the delivered frames</li>
+ * <li>fer: frames that weren't delivered or delivered with a wrong bit</li>
+ * <li>goodput: correct payload bits per second the frames were on air</li>
+ * <li>cpuNsPerByte: cpu time of the decoding thread per delivered byte</li>
+ * </ul>
+ * everything is seeded, two runs with the same arguments give the same numbers apart from the
+ * cpu time. all options are optional, lists are separated by commas:
+ * <pre>
+ * -snr -10,-5,0     snr in dB, see {@link ChannelSimulator#setSnr(double)}
+ * -hamming NO       see {@link HammingCode}
+ * -sync PRE         see {@link SyncWord}
+ * -fft 256          samples per bit
+ * -frequency best   in Hz, best is the frequency next to the default one that hits a bin exactly
+ * -frames 100       frames per combination
+ * -size 16          payload bytes per frame
+ * -seed 1
+ * -out file.csv     instead of the standard output
+ * </pre>
+ */
+public class ChannelSweep {
+    private static final String BEST = "best";
+
+    private double[] snrs = {-20, -15, -10, -5, 0, 5, 10, 20};
+    private HammingCode[] codes = HammingCode.values();
+    private SyncWord[] syncWords = {SyncWord.PRE};
+    private int[] fftSizes = {512, 256, 128, 64};
+    private String[] frequencies = {BEST};
+    private int frames = 100;
+    private int size = 16;
+    private long seed = 1;
+    private int sampleRate = ComFrame.DFAULT_SAMPLE_RATE;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ChannelSweep sweep = new ChannelSweep();
+        String out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String[] values = args[i + 1].split(",");
+            if (args[i].equals("-snr")) {
+                sweep.snrs = new double[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    sweep.snrs[j] = Double.parseDouble(values[j]);
+                }
+            } else if (args[i].equals("-hamming")) {
+                sweep.codes = new HammingCode[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    sweep.codes[j] = HammingCode.valueOf(values[j]);
+                }
+            } else if (args[i].equals("-sync")) {
+                sweep.syncWords = new SyncWord[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    sweep.syncWords[j] = SyncWord.valueOf(values[j]);
+                }
+            } else if (args[i].equals("-fft")) {
+                sweep.fftSizes = new int[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    sweep.fftSizes[j] = Integer.parseInt(values[j]);
+                }
+            } else if (args[i].equals("-frequency")) {
+                sweep.frequencies = values;
+            } else if (args[i].equals("-frames")) {
+                sweep.frames = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-size")) {
+                sweep.size = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-seed")) {
+                sweep.seed = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("-out")) {
+                out = args[i + 1];
+            } else {
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        PrintWriter writer = out == null ? new PrintWriter(System.out, true) :
+                new PrintWriter(new FileWriter(out));
+        try {
+            sweep.run(writer);
+        } finally {
+            writer.flush();
+            if (out != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private void run(PrintWriter writer) throws InterruptedException {
+        writer.println("fftSize,frequency,hamming,sync,snr,frames,lost,corrupt,ber,fer,bitRate," +
+                "goodput,cpuNsPerByte");
+        for (int fftSize : fftSizes) {
+            List<Integer> done = new ArrayList<Integer>();
+            for (String f : frequencies) {
+                int frequency = f.equals(BEST) ? CarrierPlanner.get(fftSize, sampleRate)
+                        .getBestCarrier(FFT.getFFTBin(ComFrame.DEFAULT_FREQUENCY, fftSize,
+                                sampleRate)).frequency : Integer.parseInt(f);
+                if (done.contains(frequency)) {
+                    continue;
+                }
+                done.add(frequency);
+                for (HammingCode code : codes) {
+                    for (SyncWord syncWord : syncWords) {
+                        for (double snr : snrs) {
+                            Result r = measure(fftSize, frequency, code, syncWord, snr);
+                            writer.println(String.format(Locale.US,
+                                    "%d,%d,%s,%s,%.1f,%d,%d,%d,%.6f,%.4f,%.1f,%.1f,%.0f",
+                                    fftSize, frequency, code, syncWord, snr, frames, r.lost,
+                                    r.corrupt, r.ber(), r.fer(), sampleRate / (double) fftSize,
+                                    r.goodput(), r.cpuNsPerByte()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Result {
+        int frames;
+        int lost;
+        int corrupt;
+        long bits;
+        long bitErrors;
+        long correctBits;
+        long deliveredBytes;
+        long airSamples;
+        int sampleRate;
+        long cpuNanos;
+
+        double ber() {
+            return bits == 0 ? Double.NaN : bitErrors / (double) bits;
+        }
+
+        double fer() {
+            return (lost + corrupt) / (double) frames;
+        }
+
+        double goodput() {
+            return correctBits / (airSamples / (double) sampleRate);
+        }
+
+        double cpuNsPerByte() {
+            return deliveredBytes == 0 ? Double.NaN : cpuNanos / (double) deliveredBytes;
+        }
+    }
+
+    /**
+     * sends the frames at one point of the sweep. the whole sound is rendered first, then it is
+     * decoded as fast as possible and every message is assigned to the frame that started last
+     */
+    private Result measure(int fftSize, int frequency, HammingCode code, SyncWord syncWord,
+                           double snr) throws InterruptedException {
+        Random random = new Random(seed);
+        ChannelSimulator channel = new ChannelSimulator(seed);
+        channel.setSnr(snr);
+        Tape tape = new Tape();
+        AudioSink sink = channel.wrap(tape);
+
+        ComFrameSender sender = new ComFrameSender();
+        sender.setBufferSize(fftSize);
+        sender.setFrequency(frequency);
+        sender.setSampleRate(sampleRate);
+        sender.setHammingCode(code);
+        sender.setSyncWord(syncWord);
+        sender.setAudioSink(sink);
+
+        Result result = new Result();
+        result.frames = frames;
+        result.sampleRate = sampleRate;
+        byte[][] sent = new byte[frames][size];
+        long[] starts = new long[frames];
+        // enough silence between two frames that the receiver notices the end of the first one,
+        // and a random part to not always start at the same position in a window
+        short[] gap = new short[fftSize * 24];
+        for (int i = 0; i < frames; i++) {
+            sink.write(gap, 0, fftSize * 16 + random.nextInt(fftSize));
+            random.nextBytes(sent[i]);
+            starts[i] = tape.length;
+            sender.send(sent[i]);
+            result.airSamples += tape.length - starts[i];
+        }
+        sink.write(gap, 0, gap.length);
+        sender.close();
+
+        final byte[][] received = new byte[frames][];
+        final TapeSource source = new TapeSource(tape);
+        final long[] frameStarts = starts;
+        ComFrameReceiver receiver = new ComFrameReceiver();
+        receiver.setBufferSize(fftSize);
+        receiver.setFrequency(frequency);
+        receiver.setHammingCode(code);
+        receiver.setSyncWord(syncWord);
+        receiver.setAudioSource(source);
+        receiver.setMsgListener(new ComFrame.MessageListener() {
+            @Override
+            public void onMessageReceived(byte[] msg) {
+                // called on the decoding thread, so the source is still in the frame or the gap
+                // after it
+                int frame = -1;
+                while (frame + 1 < frameStarts.length && frameStarts[frame + 1] < source.position) {
+                    frame++;
+                }
+                if (frame >= 0 && received[frame] == null) {
+                    received[frame] = msg;
+                }
+            }
+        });
+        receiver.startListening();
+        source.done.await();
+        receiver.close();
+        result.cpuNanos = source.cpuNanos;
+
+        for (int i = 0; i < frames; i++) {
+            if (received[i] == null) {
+                result.lost++;
+                continue;
+            }
+            result.deliveredBytes += received[i].length;
+            long errors = 0;
+            for (int j = 0; j < size; j++) {
+                int b = j < received[i].length ? received[i][j] : ~sent[i][j];
+                errors += Integer.bitCount((b ^ sent[i][j]) & 0xFF);
+            }
+            // bytes too much are wrong as well
+            errors += 8 * Math.max(0, received[i].length - size);
+            result.bits += 8 * Math.max(size, received[i].length);
+            result.bitErrors += errors;
+            if (errors > 0) {
+                result.corrupt++;
+            } else {
+                result.correctBits += 8 * size;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * records everything written in memory
+     */
+    private static class Tape implements AudioSink {
+        short[] samples = new short[1 << 16];
+        int length = 0;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int write(short[] buffer, int offset, int len) {
+            if (length + len > samples.length) {
+                short[] bigger = new short[Math.max(samples.length * 2, length + len)];
+                System.arraycopy(samples, 0, bigger, 0, length);
+                samples = bigger;
+            }
+            System.arraycopy(buffer, offset, samples, length, len);
+            length += len;
+            return len;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    /**
+     * plays a tape and measures the cpu time of the thread reading it. returns silence once the
+     * tape is over
+     */
+    private static class TapeSource implements AudioSource {
+        private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        private final Tape tape;
+        /**
+         * how many samples were read, only touched by the reading thread
+         */
+        long position = 0;
+        long cpuNanos;
+        private long cpuStart = -1;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        TapeSource(Tape tape) {
+            this.tape = tape;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int len) {
+            if (cpuStart < 0) {
+                cpuStart = threads.getCurrentThreadCpuTime();
+            }
+            int n = (int) Math.max(0, Math.min(len, tape.length - position));
+            if (n > 0) {
+                System.arraycopy(tape.samples, (int) position, buffer, offset, n);
+            }
+            for (int i = offset + n; i < offset + len; i++) {
+                buffer[i] = 0;
+            }
+            position += len;
+            if (position >= tape.length && done.getCount() > 0) {
+                cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+                done.countDown();
+            }
+            return len;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
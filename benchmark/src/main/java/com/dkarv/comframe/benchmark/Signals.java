@@ -0,0 +1,64 @@
+package com.dkarv.comframe.benchmark;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.dbpsk.Modulator;
+import com.dkarv.comframe.library.tools.FFT;
+
+import java.util.Random;
+
+/**
+ * creates the input data for the benchmarks
+ */
+public class Signals {
+    /**
+     * @return the frequency next to {@link ComFrame#DEFAULT_FREQUENCY} that hits an fft bin
+     * exactly for the given fftSize and sampleRate
+     */
+    public static int carrier(int fftSize, int sampleRate) {
+        int bin = FFT.getFFTBin(ComFrame.DEFAULT_FREQUENCY, fftSize, sampleRate);
+        return (int) Math.round(bin * (double) sampleRate / fftSize);
+    }
+
+    /**
+     * modulates random bits, one window of fftSize samples per bit
+     *
+     * @param noise amplitude of white noise added to every sample, relative to full scale
+     */
+    public static short[][] modulatedWindows(int count, int fftSize, int sampleRate, double noise,
+                                             long seed) {
+        Random random = new Random(seed);
+        Modulator modulator = new Modulator(carrier(fftSize, sampleRate), sampleRate);
+        short[][] windows = new short[count][fftSize];
+        for (int i = 0; i < count; i++) {
+            modulator.fillArray(random.nextBoolean() ? ComFrame.PHASE_SHIFT_1 :
+                    ComFrame.PHASE_SHIFT_0, windows[i], fftSize);
+            for (int j = 0; j < fftSize; j++) {
+                double v = windows[i][j] * (1 - noise) + random.nextGaussian() * noise * Short.MAX_VALUE;
+                windows[i][j] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * the same as {@link #modulatedWindows(int, int, int, double, long)}, but as a continuous
+     * double array scaled to [-1, 1] like the DeModulator uses it internally
+     */
+    public static double[] modulatedDoubles(int count, int fftSize, int sampleRate, double noise,
+                                            long seed) {
+        short[][] windows = modulatedWindows(count, fftSize, sampleRate, noise, seed);
+        double[] out = new double[count * fftSize];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < fftSize; j++) {
+                out[i * fftSize + j] = (double) windows[i][j] / Short.MAX_VALUE;
+            }
+        }
+        return out;
+    }
+
+    public static byte[] randomBytes(int count, long seed) {
+        byte[] data = new byte[count];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,54 @@
+package com.dkarv.comframe.library.crc;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is the crc of one frame of frameSize bytes, the bits counter reports the checked
+ * bits per second
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrcBenchmark {
+    @Param({"CRC_16", "CRC_32"})
+    public CrcCode code;
+
+    /**
+     * the biggest frame
+     */
+    @Param({"255"})
+    public int frameSize;
+
+    private Crc crc;
+    private byte[] frame;
+
+    @Setup
+    public void setup() {
+        crc = new Crc(code);
+        frame = Signals.randomBytes(frameSize, 42);
+    }
+
+    @Benchmark
+    public int compute(BitCounter counter) {
+        counter.bits += frameSize * 8;
+        return crc.compute(frame, 0, frameSize);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dkarv.comframe.library.dbpsk;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is one window of fftSize samples handed to
+ * {@link DeModulator#decodeRawData(short[], int, boolean[])}, so the score is windows/s and the time per
+ * window is 1e9 / score ns. the bits counter is the resulting bit rate in bits/s.
+ * the state is forced before every window to measure each of them on its own, as if a frame had
+ * just started: READ_LENGTH decodes the first bit of the length, RECEIVING decodes data bits
+ * without ever reaching the end of the frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeModulatorBenchmark {
+    private static final int WINDOWS = 64;
+
+    @Param({"128", "256", "512"})
+    public int fftSize;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    @Param({"WAITING", "READ_LENGTH", "RECEIVING"})
+    public String state;
+
+    private DeModulator deModulator;
+    private DeModulator.State forcedState;
+    private short[][] windows;
+    private short[] buffer;
+    private boolean[] bits;
+    private int next = 0;
+    /**
+     * to check that every window was really decoded in the forced state
+     */
+    private long windowCount;
+    private long stayedCount;
+    private long bitCount;
+
+    @Setup
+    public void setup() {
+        deModulator = new DeModulator(fftSize, Signals.carrier(fftSize, sampleRate), sampleRate);
+        forcedState = DeModulator.State.valueOf(state);
+        windows = Signals.modulatedWindows(WINDOWS, fftSize, sampleRate, 0.1, 42);
+        buffer = new short[fftSize];
+        bits = new boolean[deModulator.getMaxBitsPerWindow()];
+    }
+
+    @Benchmark
+    public int decodeRawData(BitCounter counter) {
+        // always hand over a fresh copy like the receiver does
+        System.arraycopy(windows[next], 0, buffer, 0, fftSize);
+        next = (next + 1) % WINDOWS;
+        // more bits left than one window decodes, so the frame never ends
+        deModulator.forceState(forcedState, 2 * bits.length);
+        int count = deModulator.decodeRawData(buffer, fftSize, bits);
+        counter.bits += count;
+        windowCount++;
+        if (deModulator.state == forcedState) {
+            stayedCount++;
+        }
+        bitCount += count;
+        return count;
+    }
+
+    @TearDown
+    public void check() {
+        if (forcedState == DeModulator.State.WAITING) {
+            return;
+        }
+        // otherwise the frame ended and we measured the reset
+        if (stayedCount != windowCount) {
+            throw new IllegalStateException(state + " left the state in " +
+                    (windowCount - stayedCount) + " of " + windowCount + " windows");
+        }
+        if (forcedState == DeModulator.State.RECEIVING && bitCount == 0) {
+            throw new IllegalStateException("no bits decoded in " + windowCount + " windows");
+        }
+    }
+}
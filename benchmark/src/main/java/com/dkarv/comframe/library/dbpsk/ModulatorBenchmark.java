@@ -0,0 +1,65 @@
+package com.dkarv.comframe.library.dbpsk;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+import com.dkarv.comframe.library.ComFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is one window of fftSize samples, so the score is windows/s and the time per
+ * window is 1e9 / score ns. the bits counter is the resulting bit rate in bits/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModulatorBenchmark {
+    @Param({"128", "256", "512"})
+    public int fftSize;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private Modulator modulator;
+    private short[] samples;
+    private boolean bit = false;
+
+    @Setup
+    public void setup() {
+        modulator = new Modulator(Signals.carrier(fftSize, sampleRate), sampleRate);
+        samples = new short[fftSize];
+    }
+
+    /**
+     * start every iteration with a fresh message, like the sender does
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        modulator.reset();
+    }
+
+    @Benchmark
+    public short[] fillArray(BitCounter counter) {
+        bit = !bit;
+        modulator.fillArray(bit ? ComFrame.PHASE_SHIFT_1 : ComFrame.PHASE_SHIFT_0, samples,
+                fftSize);
+        counter.bits++;
+        return samples;
+    }
+}
@@ -0,0 +1,86 @@
+package com.dkarv.comframe.library.fec;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is one frame, the bits counter reports the payload bits per second.
+ * the decoders get a frame with errors, so they have to correct them
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FecBenchmark {
+    /**
+     * RS16 and RS32 are reed solomon codes with that many parity bytes
+     */
+    @Param({"RS16", "RS32", "CONV"})
+    public String code;
+
+    /**
+     * payload bytes of one frame
+     */
+    @Param({"100"})
+    public int frameSize;
+
+    private FecEncoder encoder;
+    private FecDecoder decoder;
+    private byte[] frame;
+    private byte[] encoded;
+    private byte[] received;
+    private byte[] decoded;
+
+    @Setup
+    public void setup() {
+        if (code.startsWith("RS")) {
+            int parity = Integer.parseInt(code.substring(2));
+            encoder = new ReedSolomonEncoder(parity);
+            decoder = new ReedSolomonDecoder(parity);
+        } else {
+            encoder = new ConvolutionalEncoder();
+            decoder = new ViterbiDecoder();
+        }
+        frame = Signals.randomBytes(frameSize, 42);
+        encoded = new byte[encoder.outputByteCount(frameSize)];
+        encoder.encode(frame, frameSize, encoded);
+        // a few wrong bits, few enough that every code corrects them
+        received = encoded.clone();
+        Random random = new Random(42);
+        for (int i = 0; i < 4; i++) {
+            int bit = random.nextInt(encoder.outputBitCount(frameSize));
+            received[bit / 8] ^= 1 << (7 - bit % 8);
+        }
+        decoded = new byte[received.length];
+    }
+
+    @Benchmark
+    public byte[] encode(BitCounter counter) {
+        encoder.encode(frame, frameSize, encoded);
+        counter.bits += frameSize * 8;
+        return encoded;
+    }
+
+    @Benchmark
+    public int decode(BitCounter counter) {
+        counter.bits += frameSize * 8;
+        return decoder.decode(received, received.length * 8, decoded);
+    }
+}
@@ -0,0 +1,84 @@
+package com.dkarv.comframe.library.hamming;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+import com.dkarv.comframe.library.tools.Bit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is a whole message of messageSize bytes, the bits counter reports the payload
+ * bits per second
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HammingBenchmark {
+    @Param({"NO", "HAMMING_7_4", "HAMMING_15_11"})
+    public HammingCode code;
+
+    /**
+     * the biggest message that still fits into one frame with HAMMING_7_4
+     */
+    @Param({"145"})
+    public int messageSize;
+
+    private HammingEncoder encoder;
+    private HammingDecoder decoder;
+    private byte[] message;
+    private byte[] encoded;
+    private boolean[] encodedBits;
+    private byte[] decoded;
+
+    @Setup
+    public void setup() {
+        encoder = new HammingEncoder(code);
+        decoder = new HammingDecoder(code);
+        message = Signals.randomBytes(messageSize, 42);
+        encoded = new byte[encoder.outputByteCount(messageSize)];
+        encoder.encode(message, encoded);
+        decoded = new byte[(encoder.howManyHammings(messageSize) * encoder.inputSize() + 7) / 8];
+        encodedBits = new boolean[encoder.howManyHammings(messageSize) * encoder.outputSize()];
+        for (int i = 0; i < encodedBits.length; i++) {
+            encodedBits[i] = Bit.getBitFromArray(encoded, i) == 1;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(BitCounter counter) {
+        encoder.encode(message, encoded);
+        counter.bits += messageSize * 8;
+        return encoded;
+    }
+
+    @Benchmark
+    public void decode(BitCounter counter, Blackhole bh) {
+        for (int i = 0; i < encodedBits.length; i++) {
+            bh.consume(decoder.decode(encodedBits[i]));
+        }
+        counter.bits += messageSize * 8;
+    }
+
+    @Benchmark
+    public byte[] decodePacked(BitCounter counter) {
+        decoder.decodeCodewords(encoded, encoder.howManyHammings(messageSize), decoded);
+        counter.bits += messageSize * 8;
+        return decoded;
+    }
+}
@@ -0,0 +1,79 @@
+package com.dkarv.comframe.library.math;
+
+import com.dkarv.comframe.benchmark.BitCounter;
+import com.dkarv.comframe.benchmark.Signals;
+import com.dkarv.comframe.library.tools.FFT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is one window of fftSize samples, so the score is windows/s and the time per
+ * window is 1e9 / score ns. the bits counter is the resulting bit rate in bits/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GoertzelBenchmark {
+    /**
+     * about as many windows as the SyncDetector keeps for the shortest sync word
+     */
+    private static final int RAW_BUFFER_SIZE = 10;
+
+    @Param({"128", "256", "512"})
+    public int fftSize;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private Goertzel goertzel;
+    private double[] rawBuffer;
+    private short[] samples;
+    private double[] out = new double[2];
+    private int start;
+
+    @Setup
+    public void setup() {
+        goertzel = new Goertzel(fftSize, FFT.getFFTBin(Signals.carrier(fftSize, sampleRate),
+                fftSize, sampleRate));
+        rawBuffer = Signals.modulatedDoubles(RAW_BUFFER_SIZE, fftSize, sampleRate, 0.1, 42);
+        samples = Signals.modulatedWindows(1, fftSize, sampleRate, 0.1, 42)[0];
+        // the window wraps around the end of the buffer like in the SyncDetector
+        start = (RAW_BUFFER_SIZE - 1) * fftSize + fftSize / 2;
+    }
+
+    @Benchmark
+    public double[] goertzel(BitCounter counter) {
+        goertzel.goertzel(rawBuffer, out);
+        counter.bits++;
+        return out;
+    }
+
+    @Benchmark
+    public double[] goertzelWrapped(BitCounter counter) {
+        goertzel.goertzel(rawBuffer, start, out);
+        counter.bits++;
+        return out;
+    }
+
+    @Benchmark
+    public double[] goertzelShort(BitCounter counter) {
+        goertzel.goertzel(samples, out);
+        counter.bits++;
+        return out;
+    }
+}
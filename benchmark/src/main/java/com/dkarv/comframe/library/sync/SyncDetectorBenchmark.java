@@ -0,0 +1,61 @@
+package com.dkarv.comframe.library.sync;
+
+import com.dkarv.comframe.benchmark.Signals;
+import com.dkarv.comframe.library.tools.FFT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one operation is one window of fftSize samples searched for the sync word, so the score is
+ * windows/s and the time per window is 1e9 / score ns. the windows carry random bits, the
+ * receiver spends most of its time like this while it waits for a frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncDetectorBenchmark {
+    private static final int WINDOWS = 64;
+
+    @Param({"128", "256", "512"})
+    public int fftSize;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    @Param({"PRE", "BARKER_13", "M_SEQUENCE_31"})
+    public String syncWord;
+
+    private SyncDetector detector;
+    private short[][] windows;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        int frequency = Signals.carrier(fftSize, sampleRate);
+        detector = new SyncDetector(fftSize, FFT.getFFTBin(frequency, fftSize, sampleRate),
+                FFT.getPhaseOffset(frequency, sampleRate, fftSize), SyncWord.valueOf(syncWord));
+        windows = Signals.modulatedWindows(WINDOWS, fftSize, sampleRate, 0.1, 42);
+    }
+
+    @Benchmark
+    public int detect() {
+        int delay = detector.detect(windows[next]);
+        next = (next + 1) % WINDOWS;
+        return delay;
+    }
+}
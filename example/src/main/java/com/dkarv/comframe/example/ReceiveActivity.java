@@ -10,9 +10,11 @@ import android.widget.TextView;
 import com.dkarv.comframe.library.ComFrame;
 import com.dkarv.comframe.library.ComFrameReceiver;
 
+import java.util.concurrent.Executor;
+
 
 public class ReceiveActivity extends Activity implements OnClickListener,
-        ComFrame.BitListener, ComFrame.MessageListener {
+        ComFrame.BitBatchListener, ComFrame.MessageListener {
     private ComFrameReceiver receiver;
     private TextView dataView;
     private TextView textView;
@@ -32,7 +34,17 @@ public class ReceiveActivity extends Activity implements OnClickListener,
 
         receiver = new ComFrameReceiver();
         receiver.setMsgListener(this);
-        receiver.setBitListener(this);
+        receiver.setBitBatchListener(this);
+        // important! if you want to show the received data somehow on the UI,
+        // watch out that they are handed over in a different thread!
+        receiver.setListenerExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runOnUiThread(command);
+            }
+        });
+        // one update of the UI every 100ms is enough
+        receiver.setDispatchBatch(256, 100);
         // receiver.setHammingCode(HammingCode.HAMMING_7_4);
         receiver.debug = true;
         receiver.prepare();
@@ -58,21 +70,18 @@ public class ReceiveActivity extends Activity implements OnClickListener,
     }
 
     @Override
-    public void onBitReceived(final boolean bit) {
-        // important! if you want to show the received bits somehow on the UI,
-        // watch out that they are handed over in a different thread!
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                dataView.setText(dataView.getText() + (bit ? "1" : "0"));
-                String str = dataView.getText().toString();
-                String[] split = str.split("_");
-                int len = split[split.length - 1].length();
-                if (len == 8 || (len > 8 && (len - 8) % 9 == 0)) {
-                    dataView.setText(dataView.getText() + " ");
-                }
+    public void onBitsReceived(boolean[] bits, int count) {
+        // called on the UI thread, see the executor in onCreate()
+        StringBuilder str = new StringBuilder(dataView.getText());
+        for (int i = 0; i < count; i++) {
+            str.append(bits[i] ? "1" : "0");
+            String[] split = str.toString().split("_");
+            int len = split[split.length - 1].length();
+            if (len == 8 || (len > 8 && (len - 8) % 9 == 0)) {
+                str.append(" ");
             }
-        });
+        }
+        dataView.setText(str);
     }
 
     @Override
@@ -81,14 +90,6 @@ public class ReceiveActivity extends Activity implements OnClickListener,
         for (int i = 0; i < msg.length; i++) {
             str += (char) msg[i];
         }
-        final String s = str;
-        // important! if you want to show the received bits somehow on the UI,
-        // watch out that they are handed over in a different thread!
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                textView.setText(textView.getText() + "" + s);
-            }
-        });
+        textView.setText(textView.getText() + "" + str);
     }
 }
\ No newline at end of file
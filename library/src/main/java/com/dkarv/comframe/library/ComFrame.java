@@ -50,7 +50,11 @@ public class ComFrame {
 
     /**
      * this interface is the best if your communication is some kind of streaming. you will be
-     * notified immediately if a new byte was received by {@link #onByteReceived}
+     * notified about the bytes of every frame by {@link #onByteReceived}, but not byte by byte
+     * while they arrive: the error correcting code and the crc need the whole frame. so the bytes
+     * of a frame come all at once after its end, up to a frame's time on air after the first of
+     * them was sent, and the bytes of a frame that failed the crc never come. a
+     * {@link BitListener} gets the bits right when they are demodulated, but undecoded.
      *
      * if we reached the end of one block of data, {@link #ready()} will be called.
      */
@@ -60,6 +64,39 @@ public class ComFrame {
         public void ready();
     }
 
+    /**
+     * like the {@link StreamListener}, but gets several bytes at once. they come per frame as
+     * well, after it was decoded and checked. together with
+     * {@link ComFrameReceiver#setDispatchBatch(int, long)} this saves a lot of calls, for example
+     * when every call has to be posted to the ui thread
+     */
+    public interface ByteBatchListener {
+        /**
+         * @param bytes  only valid during this call
+         * @param offset where the new bytes start in bytes
+         * @param len    how many bytes were received
+         */
+        public void onBytesReceived(byte[] bytes, int offset, int len);
+    }
+
+    /**
+     * tells when the {@link ComFrameSender} starts and stops playing. messages queued with
+     * {@link ComFrameSender#sendAsync(byte[])} are sent back to back, so there is only one start
+     * and one end for all of them. useful to stop the own receiver while sending. the sender's
+     * lock isn't held during the calls, so they may block or call the receiver
+     */
+    public interface TransmitListener {
+        /**
+         * called right before the first sound is played, on the thread that sends
+         */
+        public void onTransmitStart();
+
+        /**
+         * called once the last message was sent, on the thread that sent it
+         */
+        public void onTransmitEnd();
+    }
+
     /**
      * implement this interface if you want to do further debug,
      * notices you about every single bit received before decoding with hamming
@@ -67,4 +104,26 @@ public class ComFrame {
     public interface BitListener {
         public void onBitReceived(boolean bit);
     }
+
+    /**
+     * like the {@link BitListener}, but gets several bits at once, see {@link ByteBatchListener}
+     */
+    public interface BitBatchListener {
+        /**
+         * @param bits  only valid during this call
+         * @param count how many bits were received, starting at index 0
+         */
+        public void onBitsReceived(boolean[] bits, int count);
+    }
+
+    /**
+     * like the {@link BitListener}, but also tells how sure the receiver is about every bit
+     */
+    public interface SoftBitListener {
+        /**
+         * @param softBit proportional to the log likelihood ratio of the bit: positive means 1,
+         *                negative 0, and the bigger the absolute value the surer we are
+         */
+        public void onSoftBitReceived(double softBit);
+    }
 }
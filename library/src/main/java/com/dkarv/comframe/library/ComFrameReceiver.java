@@ -1,16 +1,27 @@
 package com.dkarv.comframe.library;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
 import android.util.Log;
 
+import com.dkarv.comframe.library.audio.AudioRecordSource;
+import com.dkarv.comframe.library.audio.AudioSource;
+import com.dkarv.comframe.library.audio.CaptureAudioSource;
+import com.dkarv.comframe.library.crc.Crc;
+import com.dkarv.comframe.library.crc.CrcCode;
 import com.dkarv.comframe.library.dbpsk.DeModulator;
+import com.dkarv.comframe.library.dbpsk.DifferentialPSK;
+import com.dkarv.comframe.library.dbpsk.ModulationScheme;
+import com.dkarv.comframe.library.fec.BlockInterleaver;
+import com.dkarv.comframe.library.fec.FecDecoder;
+import com.dkarv.comframe.library.fec.SoftFecDecoder;
 import com.dkarv.comframe.library.hamming.HammingCode;
 import com.dkarv.comframe.library.hamming.HammingDecoder;
+import com.dkarv.comframe.library.sync.SyncWord;
 import com.dkarv.comframe.library.tools.Bit;
+import com.dkarv.comframe.library.tools.FFT;
+import com.dkarv.comframe.library.transport.Reassembler;
+import com.dkarv.comframe.library.transport.Segmenter;
 
-import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * create an instance of the ComFrameReceiver to receive the data sent by the ComFrameSender
@@ -29,22 +40,71 @@ public class ComFrameReceiver {
     private int frequency = ComFrame.DEFAULT_FREQUENCY;
     private int bufferSize = ComFrame.DEFAULT_FFT_SIZE;
     private int sampleRate = ComFrame.DFAULT_SAMPLE_RATE;
+    /**
+     * how many carriers are received at once, see {@link #setCarrierCount(int)}
+     */
+    private int carrierCount = 1;
+    /**
+     * how the data is modulated, see {@link #setModulationScheme(ModulationScheme)}
+     */
+    private ModulationScheme scheme = DifferentialPSK.DBPSK;
+    /**
+     * searched before every frame, see {@link #setSyncWord(SyncWord)}
+     */
+    private SyncWord syncWord = SyncWord.PRE;
 
-    // the three possible listener. not all of them have to be initialized,
+    // the possible listener. not all of them have to be initialized,
     // but you can set more than one if useful for your application
     private ComFrame.BitListener bitListener;
+    private ComFrame.SoftBitListener softBitListener;
+    private ComFrame.BitBatchListener bitBatchListener;
     private ComFrame.MessageListener msgListener;
     private ComFrame.StreamListener streamListener;
+    private ComFrame.ByteBatchListener byteBatchListener;
 
     /**
-     * the audio record where we will read the input data from
+     * where the listeners are called, null for the decoding thread
      */
-    private AudioRecord audioRecord;
+    private Executor listenerExecutor;
+    /**
+     * see {@link #setDispatchBatch(int, long)}
+     */
+    private int batchSize = 1;
+    private long batchMillis = 0;
+    private ListenerDispatcher dispatcher;
+
+    /**
+     * the audio source where we will read the input data from
+     */
+    private AudioSource audioSource;
 
     /**
-     * a buffer for the raw data read by audioRecord
+     * the source set by {@link #setAudioSource(AudioSource)}, null if we record from the mic
+     */
+    private AudioSource customSource;
+
+    /**
+     * see {@link #setCaptureBufferSize(int)}, -1 to capture on an own thread only from the mic
+     */
+    private int captureBufferSize = -1;
+    /**
+     * records on an own thread and hands the samples to the decoding, null if the decoding reads
+     * the source directly
+     */
+    private CaptureAudioSource captureSource;
+
+    /**
+     * a buffer for the raw data read by audioSource
      */
     private short[] buffer;
+    /**
+     * the bits decoded from one window by the deModulator, reused for every window
+     */
+    private boolean[] bits;
+    /**
+     * the soft decisions for bits, reused for every window
+     */
+    private double[] softBits;
 
     /**
      * flag if the receiver is prepared and prepared to start listening.
@@ -59,16 +119,46 @@ public class ComFrameReceiver {
 
     private HammingCode hammingCode = HammingCode.NO;
 
-    private HammingDecoder decoder;
-    private int receivedCounter = 0;
-    private byte receivedByte;
+    /**
+     * the code set by {@link #setFecDecoder(FecDecoder)}, null if we use the hammingCode
+     */
+    private FecDecoder customDecoder;
+    private FecDecoder decoder;
+    /**
+     * see {@link #setInterleaverDepth(int)}, 0 if the bits aren't interleaved
+     */
+    private int interleaverDepth = 0;
+    private BlockInterleaver interleaver;
+    private CrcCode crcCode = CrcCode.NO;
+    private Crc crc;
+    /**
+     * how many frames were dropped because of a wrong crc
+     */
+    private volatile int corruptFrames = 0;
 
     private Thread t;
 
     /**
-     * a list used to collect the bytes until the end of the message is reached
+     * collects the encoded bits until the end of the frame is reached, a frame carries at most
+     * 255 bytes. only the first codedLength bits are valid
+     */
+    private byte[] coded;
+    private int codedLength = 0;
+    /**
+     * the soft bits of the frame, only collected if the decoder is a {@link SoftFecDecoder}
+     */
+    private double[] codedSoft;
+
+    /**
+     * the decoded bytes of the last frame, only the first frameLength bytes are valid
      */
-    private ArrayList<Byte> byteCollector;
+    private byte[] frame;
+    private int frameLength = 0;
+
+    /**
+     * puts the segments of a message sent in several frames together again
+     */
+    private Reassembler reassembler;
 
     /**
      * start listening for data
@@ -98,6 +188,8 @@ public class ComFrameReceiver {
         }
 
         running = false;
+        // wakes up the audio thread if it waits for samples
+        audioSource.stop();
 
         try {
             t.join();
@@ -117,51 +209,77 @@ public class ComFrameReceiver {
             Log.e("ComFrameReceiver", "call prepare() only once!");
             return;
         }
-        // retrieve the minBufferSize from the audio record
-        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO,
-                AudioFormat.ENCODING_PCM_16BIT);
-        if (debug || verbose) {
-            Log.d("ComFrameReceiver", "minBufferSize: " + minBufferSize);
+        if (customSource != null) {
+            audioSource = customSource;
+        } else {
+            // retrieve the minBufferSize from the audio record
+            int minBufferSize = AudioRecordSource.getMinBufferSize(sampleRate);
+            if (debug || verbose) {
+                Log.d("ComFrameReceiver", "minBufferSize: " + minBufferSize);
+            }
+
+            minBufferSize = Math.max(minBufferSize, bufferSize);
+            if (debug || verbose) {
+                Log.d("ComFrameReceiver", "buffer will be set to: " + minBufferSize);
+            }
+            // we ensure that the buffer is big enough to store also larger parts by setting it to
+            // the min size * 16
+            audioSource = new AudioRecordSource(sampleRate, minBufferSize * 16);
         }
 
-        minBufferSize = Math.max(minBufferSize, bufferSize);
-        if (debug || verbose) {
-            Log.d("ComFrameReceiver", "buffer will be set to: " + minBufferSize);
+        // a custom source is usually no real time source, so it doesn't need an own thread
+        int captureSize = captureBufferSize >= 0 ? captureBufferSize
+                : customSource == null ? sampleRate * 2 : 0;
+        if (captureSize > 0) {
+            if (debug || verbose) {
+                Log.d("ComFrameReceiver", "capture buffer will be set to: " + captureSize);
+            }
+            captureSource = new CaptureAudioSource(audioSource, Math.max(captureSize, bufferSize),
+                    bufferSize);
+            audioSource = captureSource;
         }
-        // we ensure that the buffer is big enough to store also larger parts by setting it to
-        // the min size * 16
-        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate,
-                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, minBufferSize * 16);
 
         buffer = new short[bufferSize];
 
-        deModulator = new DeModulator(bufferSize, frequency, sampleRate, audioRecord);
+        deModulator = new DeModulator(bufferSize, FFT.getCarrierFrequencies(frequency,
+                carrierCount, bufferSize, sampleRate), sampleRate, scheme, syncWord);
         deModulator.debug = debug;
         deModulator.verbose = verbose;
+        bits = new boolean[deModulator.getMaxBitsPerWindow()];
+        softBits = new double[bits.length];
 
-        decoder = new HammingDecoder(hammingCode);
+        decoder = customDecoder != null ? customDecoder : new HammingDecoder(hammingCode);
 
-        byteCollector = new ArrayList<Byte>();
+        coded = new byte[256];
+        if (decoder instanceof SoftFecDecoder) {
+            codedSoft = new double[coded.length * 8];
+        }
+        if (interleaverDepth > 1) {
+            interleaver = new BlockInterleaver(interleaverDepth);
+        }
+        frame = new byte[256];
+        crc = new Crc(crcCode);
+        dispatcher = new ListenerDispatcher(listenerExecutor, batchSize, batchMillis * 1000000L,
+                bits.length, bitListener, softBitListener, bitBatchListener, streamListener,
+                byteBatchListener, msgListener);
+        reassembler = new Reassembler();
 
         prepared = true;
     }
 
     /**
      * this method is used to reset the ComFrameReceiver so that it will start recording the next
-     * time as if it was created new
+     * time as if it was created new. not synchronized: it's called by the AudioThread at the end
+     * of every frame, while stopListening() holds the lock and waits for that thread
      */
-    private synchronized void reset() {
+    private void reset() {
         if (verbose) {
             Log.d("ComFrameReceiver", "reset()");
         }
 
-        receivedByte = 0;
-        receivedCounter = 0;
-        if (byteCollector != null) {
-            byteCollector.clear();
-        }
+        codedLength = 0;
+        frameLength = 0;
         deModulator.reset();
-        decoder.reset();
     }
 
 
@@ -170,12 +288,36 @@ public class ComFrameReceiver {
      */
     public synchronized void close() {
         this.stopListening();
-        if(audioRecord != null){
-            audioRecord.release();
+        if(audioSource != null){
+            audioSource.release();
+            audioSource = null;
         }
         prepared = false;
     }
 
+    /**
+     * @return how many frames were dropped because their crc was wrong, see
+     * {@link #setCrcCode(CrcCode)}
+     */
+    public int getCorruptFrameCount() {
+        return corruptFrames;
+    }
+
+    /**
+     * @return how often recorded sound was dropped because the decoding couldn't keep up, see
+     * {@link #setCaptureBufferSize(int)}
+     */
+    public int getOverrunCount() {
+        return captureSource != null ? captureSource.getOverrunCount() : 0;
+    }
+
+    /**
+     * @return how many samples were dropped because the decoding couldn't keep up
+     */
+    public long getDroppedSampleCount() {
+        return captureSource != null ? captureSource.getDroppedSampleCount() : 0;
+    }
+
     /**
      * @return if the ComFrameReceiver is currently running
      */
@@ -184,50 +326,67 @@ public class ComFrameReceiver {
     }
 
     /**
-     * collects bits until a byte was received, and sends this byte to the listener...
+     * collects the encoded bits of a frame, they are decoded once the frame is complete
      *
-     * @param decodedBit the new decoded bit
-     */
-    private void receivedNewBit(boolean decodedBit) {
-        receivedByte = Bit.storeBigEndian(receivedByte, receivedCounter, decodedBit);
-        receivedCounter = (receivedCounter + 1) % 8;
-        if (receivedCounter == 0) {
-            // received a complete byte, send to the listener
-            if (streamListener != null) {
-                streamListener.onByteReceived(receivedByte);
-            }
-            if (debug || verbose) {
-                // print to the log:
-                String b = "";
-                for (int i = 0; i < 8; i++) {
-                    b += Bit.getBit(receivedByte, i) ? "1" : "0";
-                }
-                Log.d("Receiver", "received: " + b);
-            }
-            if (msgListener != null) {
-                collectMessage(receivedByte);
+     * @param bit     the new bit
+     * @param softBit how sure the deModulator is about it
+     */
+    private void receivedNewBit(boolean bit, double softBit) {
+        if (codedLength < coded.length * 8) {
+            if (codedSoft != null) {
+                codedSoft[codedLength] = softBit;
             }
+            Bit.storeBigEndian(coded, codedLength++, bit);
         }
     }
 
     /**
-     * collects a whole message that will be given to the msgListener then
-     */
-    private void collectMessage(byte newByte) {
-        byteCollector.add(newByte);
-    }
-
-    /**
-     * is called when we're not receiving any data. sends them to the msgListener if it is set
+     * is called at the end of every frame. decodes it and sends the payload to the
+     * streamListener. once all segments of a message arrived, sends it to the msgListener
      */
     private void ready() {
-        if (msgListener != null && !byteCollector.isEmpty()) {
-            final int n = byteCollector.size();
-            byte data[] = new byte[n];
-            for (int i = 0; i < n; i++) {
-                data[i] = byteCollector.get(i);
+        if (codedLength > 0) {
+            if (codedSoft != null) {
+                if (interleaver != null) {
+                    interleaver.deinterleave(codedSoft, codedLength);
+                }
+                frameLength = ((SoftFecDecoder) decoder).decodeSoft(codedSoft, codedLength, frame);
+            } else {
+                if (interleaver != null) {
+                    interleaver.deinterleave(coded, codedLength);
+                }
+                frameLength = decoder.decode(coded, codedLength, frame);
+            }
+            if (debug || verbose) {
+                // print to the log:
+                for (int i = 0; i < frameLength; i++) {
+                    String b = "";
+                    for (int j = 0; j < 8; j++) {
+                        b += Bit.getBit(frame[i], j) ? "1" : "0";
+                    }
+                    Log.d("Receiver", "received: " + b);
+                }
+            }
+
+            int payload = frameLength >= Segmenter.HEADER_SIZE ? frame[2] & 0xFF : 0;
+            int length = Segmenter.HEADER_SIZE + payload;
+            if (crcCode != CrcCode.NO &&
+                    (length + crc.size() > frameLength || !crc.check(frame, length))) {
+                // drop it, and the message it belongs to
+                corruptFrames++;
+                reassembler.reset();
+                if (debug || verbose) {
+                    Log.d("ComFrameReceiver", "dropped corrupt frame");
+                }
+            } else {
+                int end = Math.min(length, frameLength);
+                if (end > Segmenter.HEADER_SIZE) {
+                    dispatcher.addBytes(frame, Segmenter.HEADER_SIZE, end - Segmenter.HEADER_SIZE);
+                }
+                if (dispatcher.wantsMessages() && reassembler.add(frame, frameLength)) {
+                    dispatcher.addMessage(reassembler.getMessage());
+                }
             }
-            msgListener.onMessageReceived(data);
         }
 
         reset();
@@ -255,6 +414,17 @@ public class ComFrameReceiver {
         this.bitListener = bitListener;
     }
 
+    /**
+     * set the SoftBitListener, it gets the same bits as the BitListener together with
+     * how sure the receiver is about them
+     *
+     * @param softBitListener
+     */
+    public void setSoftBitListener(ComFrame.SoftBitListener softBitListener) {
+        checkPrepared();
+        this.softBitListener = softBitListener;
+    }
+
     /**
      * set the MessageListener. For further documentation which listener to use,
      * see {@link com.dkarv.comframe.library.ComFrame}
@@ -268,7 +438,8 @@ public class ComFrameReceiver {
 
     /**
      * set the StreamListener. For further documentation which listener to use,
-     * see {@link com.dkarv.comframe.library.ComFrame}
+     * see {@link com.dkarv.comframe.library.ComFrame}. the bytes arrive per frame once it was
+     * decoded and passed the crc, see {@link ComFrame.StreamListener}
      *
      * @param streamListener
      */
@@ -277,6 +448,56 @@ public class ComFrameReceiver {
         this.streamListener = streamListener;
     }
 
+    /**
+     * set the ByteBatchListener, gets the same bytes as the StreamListener but several at once
+     *
+     * @param byteBatchListener
+     */
+    public void setByteBatchListener(ComFrame.ByteBatchListener byteBatchListener) {
+        checkPrepared();
+        this.byteBatchListener = byteBatchListener;
+    }
+
+    /**
+     * set the BitBatchListener, gets the same bits as the BitListener but several at once
+     *
+     * @param bitBatchListener
+     */
+    public void setBitBatchListener(ComFrame.BitBatchListener bitBatchListener) {
+        checkPrepared();
+        this.bitBatchListener = bitBatchListener;
+    }
+
+    /**
+     * call all listeners on executor instead of the thread that decodes the sound, for example
+     * to get them on the ui thread. every batch of bits or bytes and every message is one task,
+     * so the executor has to run them in order.
+     *
+     * @param executor null to call the listeners on the decoding thread
+     */
+    public void setListenerExecutor(Executor executor) {
+        checkPrepared();
+        this.listenerExecutor = executor;
+    }
+
+    /**
+     * collect bits and bytes before they are handed to the listeners, until count of them are
+     * pending or the oldest of them waits for millis. everything pending is delivered at the end
+     * of every frame as well. by default every decoded window and every frame is delivered
+     * right away.
+     *
+     * @param count  at least 1
+     * @param millis 0 to only wait for count
+     */
+    public void setDispatchBatch(int count, long millis) {
+        checkPrepared();
+        if (count < 1 || millis < 0) {
+            throw new IllegalArgumentException("invalid batch: " + count + " / " + millis + "ms");
+        }
+        this.batchSize = count;
+        this.batchMillis = millis;
+    }
+
     /**
      * set the HammingCode. has to be the same as used on the sender part
      *
@@ -286,6 +507,39 @@ public class ComFrameReceiver {
         this.hammingCode = hammingCode;
     }
 
+    /**
+     * use another error correcting code than a hamming code, has to match
+     * {@link ComFrameSender#setFecEncoder(com.dkarv.comframe.library.fec.FecEncoder)}
+     *
+     * @param decoder
+     */
+    public void setFecDecoder(FecDecoder decoder) {
+        checkPrepared();
+        this.customDecoder = decoder;
+    }
+
+    /**
+     * de-interleave the bits of every frame, has to be the same depth as
+     * {@link ComFrameSender#setInterleaverDepth(int)}
+     *
+     * @param depth
+     */
+    public void setInterleaverDepth(int depth) {
+        checkPrepared();
+        this.interleaverDepth = depth;
+    }
+
+    /**
+     * check the crc of every frame and drop the corrupt ones, has to be the same as
+     * {@link ComFrameSender#setCrcCode(CrcCode)}
+     *
+     * @param crcCode
+     */
+    public void setCrcCode(CrcCode crcCode) {
+        checkPrepared();
+        this.crcCode = crcCode;
+    }
+
     /**
      * set if you want to send on another frequency.
      * important: choose a frequency that works well with the chosen fftSize.
@@ -297,6 +551,42 @@ public class ComFrameReceiver {
         this.frequency = frequency;
     }
 
+    /**
+     * receive on several carriers at once, has to be the same as
+     * {@link ComFrameSender#setCarrierCount(int)}
+     *
+     * @param carrierCount
+     */
+    public void setCarrierCount(int carrierCount) {
+        checkPrepared();
+        if (carrierCount < 1) {
+            throw new IllegalArgumentException("there has to be at least one carrier!");
+        }
+        this.carrierCount = carrierCount;
+    }
+
+    /**
+     * receive data sent with another {@link ModulationScheme}, has to be the same as
+     * {@link ComFrameSender#setModulationScheme(ModulationScheme)}
+     *
+     * @param scheme
+     */
+    public void setModulationScheme(ModulationScheme scheme) {
+        checkPrepared();
+        this.scheme = scheme;
+    }
+
+    /**
+     * search frames that start with another {@link SyncWord}, has to be the same as
+     * {@link ComFrameSender#setSyncWord(SyncWord)}
+     *
+     * @param syncWord
+     */
+    public void setSyncWord(SyncWord syncWord) {
+        checkPrepared();
+        this.syncWord = syncWord;
+    }
+
     /**
      * set if you want to use another bufferSize.
      * important: choose a bufferSize that works well with the chosen frequency.
@@ -309,35 +599,83 @@ public class ComFrameReceiver {
     }
 
     /**
-     * this thread will record the audio, and analyze it asynchronous
+     * pro users only
+     * record with another sample rate, has to be the same as
+     * {@link ComFrameSender#setSampleRate(int)}
+     *
+     * @param sampleRate
+     */
+    public void setSampleRate(int sampleRate) {
+        checkPrepared();
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * read the sound from another source than the mic of the device, for example a
+     * {@link com.dkarv.comframe.library.audio.WavFileSource} or the source of a
+     * {@link com.dkarv.comframe.library.audio.LoopbackAudio}.
+     * the source will be released in {@link #close()}
+     *
+     * @param audioSource
+     */
+    public void setAudioSource(AudioSource audioSource) {
+        checkPrepared();
+        this.customSource = audioSource;
+    }
+
+    /**
+     * record on an own thread which only copies the sound into a ring buffer of size samples, so
+     * the decoding and the listeners can't stall the recording. if the decoding falls behind more
+     * than size samples, the newest sound is dropped, see {@link #getOverrunCount()}.
+     * <p/>
+     * by default the mic is recorded with a buffer of two seconds and a custom source is read
+     * directly by the decoding. set 0 to always read directly.
+     *
+     * @param size
+     */
+    public void setCaptureBufferSize(int size) {
+        checkPrepared();
+        if (size < 0) {
+            throw new IllegalArgumentException("the size can't be negative!");
+        }
+        this.captureBufferSize = size;
+    }
+
+    /**
+     * this thread will analyze the audio asynchronous, the recording happens in the
+     * captureSource if there is one
      */
     private class AudioThread extends Thread {
 
         @Override
         public void run() {
-            audioRecord.startRecording();
+            audioSource.start();
 
             int result;
-            boolean[] bits;
-            boolean[] decodedBits;
+            int count;
             // remember if we were receiving something the last loop
             boolean started = false;
             while (running) {
-                result = audioRecord.read(buffer, 0, bufferSize);
-                // the decoding happens in the modulator after this call
-                bits = deModulator.decodeRawData(buffer, result);
-
-                if (bitListener != null) {
-                    for (int i = 0; i < bits.length; i++) {
-                        bitListener.onBitReceived(bits[i]);
+                result = audioSource.read(buffer, 0, bufferSize);
+                if (!running) {
+                    // stopListening() woke us up, the buffer may be incomplete
+                    break;
+                }
+                if (captureSource != null && captureSource.getError() != 0) {
+                    // the recording failed, reading again would only spin
+                    if (debug) {
+                        Log.d("ComFrameReceiver", "recording failed: " +
+                                captureSource.getError());
                     }
+                    break;
                 }
+                // the decoding happens in the modulator after this call
+                count = deModulator.decodeRawData(buffer, result, bits, softBits);
 
-                for (int i = 0; i < bits.length; i++) {
-                    decodedBits = decoder.decode(bits[i]);
-                    for (int j = 0; j < decodedBits.length; j++) {
-                        receivedNewBit(decodedBits[j]);
-                    }
+                dispatcher.addBits(bits, softBits, count);
+
+                for (int i = 0; i < count; i++) {
+                    receivedNewBit(bits[i], softBits[i]);
                 }
 
                 boolean receiving = deModulator.isReceiving();
@@ -354,10 +692,14 @@ public class ComFrameReceiver {
                     }
                     started = false;
                     ready();
+                    // nothing follows for a while, so don't let the listeners wait
+                    dispatcher.flush();
+                } else {
+                    dispatcher.poll();
                 }
 
             }
-            audioRecord.stop();
+            dispatcher.flush();
         }
     }
 
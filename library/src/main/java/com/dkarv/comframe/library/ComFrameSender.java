@@ -1,21 +1,40 @@
 package com.dkarv.comframe.library;
 
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioTrack;
 import android.util.Log;
 
+import com.dkarv.comframe.library.audio.AudioSink;
+import com.dkarv.comframe.library.audio.AudioTrackSink;
+import com.dkarv.comframe.library.crc.Crc;
+import com.dkarv.comframe.library.crc.CrcCode;
+import com.dkarv.comframe.library.dbpsk.DifferentialPSK;
+import com.dkarv.comframe.library.dbpsk.ModulationScheme;
 import com.dkarv.comframe.library.dbpsk.Modulator;
+import com.dkarv.comframe.library.fec.BlockInterleaver;
+import com.dkarv.comframe.library.fec.FecEncoder;
 import com.dkarv.comframe.library.hamming.HammingCode;
 import com.dkarv.comframe.library.hamming.HammingEncoder;
+import com.dkarv.comframe.library.sync.SyncWord;
 import com.dkarv.comframe.library.tools.Bit;
+import com.dkarv.comframe.library.tools.FFT;
+import com.dkarv.comframe.library.transport.Segmenter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * create an instance of the ComFrameSender to be able to send data via sound.
  */
 public class ComFrameSender {
     /**
-     * bits [1 ... 8] from {@link #pre}
+     * how many windows are rendered into {@link #samples} before they are written to the sink at
+     * once. big writes keep the sink from running empty between two windows
+     */
+    private static final int RENDER_WINDOWS = 256;
+    /**
+     * the sync word all frames started with before there was a choice, see {@link SyncWord#PRE}
      */
     public static final byte PRE = -44;
     public boolean debug = false;
@@ -27,17 +46,57 @@ public class ComFrameSender {
     private int frequency = ComFrame.DEFAULT_FREQUENCY;
     private int bufferSize = ComFrame.DEFAULT_FFT_SIZE;
     private int sampleRate = ComFrame.DFAULT_SAMPLE_RATE;
-    private Modulator modulator;
     /**
-     * array to store the sound samples that will be sent
+     * how many carriers are used at once, see {@link #setCarrierCount(int)}
+     */
+    private int carrierCount = 1;
+    /**
+     * how the data is modulated, see {@link #setModulationScheme(ModulationScheme)}
+     */
+    private ModulationScheme scheme = DifferentialPSK.DBPSK;
+    /**
+     * sent before every frame, see {@link #setSyncWord(SyncWord)}
+     */
+    private SyncWord syncWord = SyncWord.PRE;
+    /**
+     * one Modulator for every carrier
+     */
+    private Modulator[] modulators;
+    /**
+     * array to store the sound samples that will be sent, holds {@link #RENDER_WINDOWS} windows
      */
     private short[] samples;
-    private AudioTrack audioTrack;
+    private AudioSink audioSink;
+    /**
+     * the sink set by {@link #setAudioSink(AudioSink)}, null if we play on the speaker
+     */
+    private AudioSink customSink;
     private HammingCode hammingCode = HammingCode.NO;
-    private HammingEncoder encoder;
-    private byte[] hammingOutput;
-    // the start sequence
-    private boolean[] pre = {false, true, true, false, true, false, true, false, false};
+    /**
+     * the code set by {@link #setFecEncoder(FecEncoder)}, null if we use the hammingCode
+     */
+    private FecEncoder customEncoder;
+    private FecEncoder encoder;
+    /**
+     * see {@link #setInterleaverDepth(int)}, 0 if the bits aren't interleaved
+     */
+    private int interleaverDepth = 0;
+    private BlockInterleaver interleaver;
+    private CrcCode crcCode = CrcCode.NO;
+    private Crc crc;
+    private byte[] encoded;
+    /**
+     * splits the data into frames, see {@link #send(byte[])}
+     */
+    private Segmenter segmenter;
+    /**
+     * the segment that is sent in the current frame
+     */
+    private byte[] segment;
+    /**
+     * the start sequence: a reference window and the bits of the syncWord
+     */
+    private boolean[] pre;
     /**
      * an end sequence. we're currently just sending some useless bits because the last phases
      * are always trash on the receiver side, maybe because of some underlying Android
@@ -46,40 +105,142 @@ public class ComFrameSender {
     private boolean[] after = {false, true, false, true, false, true, false, true, false, true,
             false};
 
+    /**
+     * if the audioSink is started
+     */
+    private boolean playing = false;
+    private ComFrame.TransmitListener transmitListener;
+    /**
+     * how many {@link #send(byte[])} calls and the transmitter are between
+     * {@link #beginTransmission()} and {@link #endTransmission()}
+     */
+    private int transmissions = 0;
+    /**
+     * if the first transmission is still in onTransmitStart, the others wait for it
+     */
+    private boolean announcing = false;
+    /**
+     * how many messages {@link #sendAsync(byte[])} queues at most
+     */
+    private int queueCapacity = 16;
+    /**
+     * sends the messages of {@link #sendAsync(byte[])}, started with the first one
+     */
+    private volatile Transmitter transmitter;
+    /**
+     * set by {@link #close()}, {@link #sendAsync(byte[])} refuses messages afterwards
+     */
+    private boolean closed = false;
+
     /**
      * call this method if all parameters and options have been set,
      * after a call to prepare() you aren't able to change any options.
      */
     public synchronized void prepare() {
         // the user has set all settings, prepare to send data
-        samples = new short[bufferSize];
-        audioTrack = new AudioTrack(
-                AudioManager.STREAM_MUSIC, sampleRate,
-                AudioFormat.CHANNEL_OUT_MONO,
-                AudioFormat.ENCODING_PCM_16BIT, bufferSize,
-                AudioTrack.MODE_STREAM);
+        samples = new short[RENDER_WINDOWS * bufferSize];
+        if (customSink != null) {
+            audioSink = customSink;
+        } else {
+            // big enough to take all samples rendered at once
+            audioSink = new AudioTrackSink(sampleRate, Math.max(
+                    AudioTrackSink.getMinBufferSize(sampleRate), samples.length * 2));
+        }
+
+        int[] frequencies = FFT.getCarrierFrequencies(frequency, carrierCount, bufferSize,
+                sampleRate);
+        modulators = new Modulator[carrierCount];
+        for (int c = 0; c < carrierCount; c++) {
+            // the carriers are added up, so share the amplitude between them
+            modulators[c] = new Modulator(frequencies[c], sampleRate,
+                    (short) (Short.MAX_VALUE / carrierCount));
+            modulators[c].debug = debug;
+            modulators[c].verbose = verbose;
+        }
 
-        modulator = new Modulator(frequency, sampleRate);
-        modulator.debug = debug;
-        modulator.verbose = verbose;
+        encoder = customEncoder != null ? customEncoder : new HammingEncoder(hammingCode);
 
-        encoder = new HammingEncoder(hammingCode);
+        // the biggest segment whose encoded form still fits into the length field of a frame
+        int maxSegmentSize = 255;
+        while (encoder.outputByteCount(maxSegmentSize) > 255) {
+            maxSegmentSize--;
+        }
+        // the crc is appended to every segment
+        crc = new Crc(crcCode);
+        segmenter = new Segmenter(maxSegmentSize - crc.size());
+        segment = new byte[maxSegmentSize];
+        encoded = new byte[255];
+        if (interleaverDepth > 1) {
+            interleaver = new BlockInterleaver(interleaverDepth);
+        }
+        pre = new boolean[syncWord.length() + 1];
+        for (int i = 0; i < syncWord.length(); i++) {
+            pre[i + 1] = syncWord.getBit(i);
+        }
 
         prepared = true;
     }
 
     /**
-     * will broadcast the data, method call returns when everything is sent
-     * important: this function will pad 0's to your data depending on the HammingCode you chose,
-     * so it's better to send large arrays than short ones
+     * will broadcast the data, method call returns when everything is sent.
+     * data that doesn't fit into one frame is split into several ones sent back to back, the
+     * receiver puts them together again. see {@link #getMaxMessageSize()} for the limit
      *
      * @param data the byte array containing the data
      */
-    public synchronized void send(byte[] data) {
+    public void send(byte[] data) {
+        beginTransmission();
+        try {
+            synchronized (this) {
+                if (!prepared) {
+                    prepare();
+                }
+
+                transmit(data);
+                stopPlaying();
+            }
+        } finally {
+            endTransmission();
+        }
+    }
+
+    /**
+     * like {@link #send(byte[])}, but returns right away. the messages are queued and sent one
+     * after the other on an own thread, without stopping the sink in between. the queue holds
+     * {@link #setQueueCapacity(int)} messages.
+     *
+     * @param data the byte array containing the data, it is copied
+     * @return done once the message was sent, cancel it to drop the message if it wasn't started
+     * yet
+     * @throws IllegalArgumentException if data is too long, see {@link #getMaxMessageSize()}
+     * @throws IllegalStateException    if the queue is full or the sender was closed
+     */
+    public Future<Void> sendAsync(byte[] data) {
+        Transmitter t = transmitter;
+        if (t == null) {
+            t = startTransmitter();
+        }
+        return t.submit(data.clone());
+    }
+
+    private synchronized Transmitter startTransmitter() {
+        if (closed) {
+            throw new IllegalStateException("the sender was closed!");
+        }
         if (!prepared) {
             prepare();
         }
+        if (transmitter == null) {
+            transmitter = new Transmitter(segmenter, queueCapacity);
+            transmitter.start();
+        }
+        return transmitter;
+    }
 
+    /**
+     * sends data, the caller has to hold the lock. starts the sink but doesn't stop it
+     */
+    private void transmit(byte[] data) {
         if (debug) {
             StringBuilder b = new StringBuilder();
             for (int i = 0; i < data.length; i++) {
@@ -91,27 +252,127 @@ public class ComFrameSender {
             Log.d("ComFrameSender", "send: " + b.toString());
         }
 
-        // now encode the data with a hamming code
-        hammingOutput = new byte[encoder.outputByteCount(data.length)];
-        encoder.encode(data, hammingOutput);
-        int hammingLength = encoder.howManyHammings(data.length) * encoder.outputSize();
+        int count = segmenter.segmentCount(data.length);
+        if (debug || verbose) {
+            Log.d("ComFrameSender", "segments: " + count);
+        }
+
+        // ensure that the modulators start from scratch
+        for (int c = 0; c < carrierCount; c++) {
+            modulators[c].reset();
+        }
+
+        // start playing, now we can write sound to the audioSink
+        if (!playing) {
+            audioSink.start();
+            playing = true;
+        }
+
+        for (int i = 0; i < count; i++) {
+            sendFrame(crc.append(segment, segmenter.segment(data, i, segment)));
+        }
+    }
+
+    /**
+     * after ready with sending, stop the playing
+     */
+    private void stopPlaying() {
+        if (playing) {
+            audioSink.stop();
+            playing = false;
+        }
+    }
+
+    /**
+     * tells the listener that we start sending, if nobody else is sending already. call it
+     * without holding the lock: the listener may take its time or lock the receiver, and
+     * that must neither stall nor deadlock the other callers
+     */
+    private void beginTransmission() {
+        ComFrame.TransmitListener listener;
+        synchronized (this) {
+            if (transmissions++ > 0) {
+                // don't play before the listener is ready
+                while (announcing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                return;
+            }
+            listener = transmitListener;
+            announcing = true;
+        }
+        try {
+            if (listener != null) {
+                listener.onTransmitStart();
+            }
+        } finally {
+            synchronized (this) {
+                announcing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * tells the listener that we stopped sending, if nobody else is sending any more. call it
+     * without holding the lock, see {@link #beginTransmission()}
+     */
+    private void endTransmission() {
+        ComFrame.TransmitListener listener;
+        synchronized (this) {
+            if (--transmissions > 0) {
+                return;
+            }
+            listener = transmitListener;
+        }
+        if (listener != null) {
+            listener.onTransmitEnd();
+        }
+    }
+
+    /**
+     * @return the biggest message {@link #send(byte[])} accepts with the chosen options
+     */
+    public synchronized int getMaxMessageSize() {
+        if (!prepared) {
+            prepare();
+        }
+        return segmenter.getMaxMessageSize();
+    }
+
+    /**
+     * encodes the first length bytes of {@link #segment} and sends them in one frame
+     *
+     * @param length
+     */
+    private void sendFrame(int length) {
+        // now encode the data with the error correcting code
+        encoder.encode(segment, length, encoded);
+        int encodedLength = encoder.outputBitCount(length);
+        if (interleaver != null) {
+            // the receiver always gets whole bytes, so interleave the padding too
+            encodedLength = encoder.outputByteCount(length) * 8;
+            interleaver.interleave(encoded, encodedLength);
+        }
 
         if (debug || verbose) {
             StringBuilder b = new StringBuilder();
-            for (int i = 0; i < hammingLength; i++) {
+            for (int i = 0; i < encodedLength; i++) {
                 if (i % 8 == 0 && i != 0) {
                     b.append(' ');
                 }
-                b.append(Bit.getBitFromArray(hammingOutput, i));
+                b.append(Bit.getBitFromArray(encoded, i));
             }
-            Log.d("ComFrameSender", "hamming: " + b.toString());
+            Log.d("ComFrameSender", "encoded: " + b.toString());
         }
 
-        int len = (int) Math.ceil(hammingLength / 8.0);
-        if (len > 255 || len <= 0) {
-            throw new IllegalArgumentException("the length of the data isn't allowed to be > 256 " +
-                    "or zero bytes after hamming encoding!");
-        }
+        // fits into one byte, the segmenter took care of that
+        int len = (int) Math.ceil(encodedLength / 8.0);
 
         if (debug || verbose) {
             Log.d("ComFrameSender", "length of data: " + len);
@@ -122,41 +383,79 @@ public class ComFrameSender {
             decodedLength[i] = Bit.getBit(len, 24 + i);
         }
 
-        // ensure that the modulator starts from scratch
-        modulator.reset();
-
-        // start playing, now we can write sound to the audioTrack
-        audioTrack.play();
-
-        for (int i = -pre.length - decodedLength.length; i < hammingLength + after.length; i++) {
-            if (i < -decodedLength.length) {
-                // send the bits from pre
-                sendBit(pre[pre.length + i + decodedLength.length]);
-            } else if (i < 0) {
-                // now send the length of the data
-                sendBit(decodedLength[decodedLength.length + i]);
-            } else if (i < hammingLength) {
-                // send the data
-                sendBit(Bit.getBitFromArray(hammingOutput, i) == 1);
-            } else {
-                // and send the after bits
-                sendBit(after[i - (hammingLength)]);
+        // put together the whole frame as phase shifts, carrierCount per window. pre, length and
+        // after are sent with DBPSK on all carriers. the data is striped over the carriers, one
+        // symbol of bitsPerSymbol bits each: carrier c sends symbol i * n + c
+        final int n = carrierCount;
+        final int bitsPerSymbol = scheme.getBitsPerSymbol();
+        int dataWindows = (encodedLength + n * bitsPerSymbol - 1) / (n * bitsPerSymbol);
+        double[] frame = new double[(pre.length + decodedLength.length + dataWindows +
+                after.length) * n];
+        int window = 0;
+        window = repeatBits(pre, frame, window);
+        window = repeatBits(decodedLength, frame, window);
+        for (int i = 0; i < dataWindows * n; i++) {
+            int symbol = 0;
+            for (int b = 0; b < bitsPerSymbol; b++) {
+                // the last symbols are padded with 0's
+                int bit = i * bitsPerSymbol + b;
+                symbol = (symbol << 1) | (bit < encodedLength ?
+                        Bit.getBitFromArray(encoded, bit) : 0);
             }
+            frame[window * n + i] = scheme.getPhaseShift(symbol);
         }
+        window += dataWindows;
+        repeatBits(after, frame, window);
 
-        // after ready with sending, stop the playing
-        audioTrack.stop();
+        sendShifts(frame);
     }
 
-
     /**
      * important: call this function once you don't need the sender any more to stop draining the battery
+     * the messages queued by {@link #sendAsync(byte[])} are sent before
      */
-    public synchronized void close() {
-        if(audioTrack != null){
-            audioTrack.release();
+    public void close() {
+        Transmitter t;
+        synchronized (this) {
+            // sendAsync checks it with the same lock, so it can't start another transmitter
+            closed = true;
+            t = transmitter;
+            transmitter = null;
+        }
+        // not with the lock, the transmitter needs it to send the queued messages
+        if (t != null) {
+            t.shutdown();
+        }
+        synchronized (this) {
+            if (audioSink != null) {
+                audioSink.release();
+                audioSink = null;
+            }
+            prepared = false;
+        }
+    }
+
+    /**
+     * set how many messages {@link #sendAsync(byte[])} can queue before it refuses new ones
+     *
+     * @param capacity
+     */
+    public synchronized void setQueueCapacity(int capacity) {
+        checkPrepared();
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the queue needs space for at least one message!");
         }
-        prepared = false;
+        this.queueCapacity = capacity;
+    }
+
+    /**
+     * get notified when the sender starts and stops playing
+     *
+     * @param transmitListener
+     */
+    public synchronized void setTransmitListener(ComFrame.TransmitListener transmitListener) {
+        checkPrepared();
+        this.transmitListener = transmitListener;
     }
 
     /**
@@ -183,6 +482,42 @@ public class ComFrameSender {
         }
     }
 
+    /**
+     * use another error correcting code than a hamming code, for example a
+     * {@link com.dkarv.comframe.library.fec.ReedSolomonEncoder} against burst errors or a
+     * {@link com.dkarv.comframe.library.fec.ConvolutionalEncoder} for noisy links. replaces the
+     * hammingCode. important: set the matching decoder for the receiver
+     *
+     * @param encoder
+     */
+    public synchronized void setFecEncoder(FecEncoder encoder) {
+        checkPrepared();
+        this.customEncoder = encoder;
+    }
+
+    /**
+     * interleave the encoded bits of every frame with a {@link BlockInterleaver}, so a burst of
+     * errors is spread over several codewords. choose a depth of at least the codeword length,
+     * 0 turns it off. important: set the same depth for the receiver
+     *
+     * @param depth
+     */
+    public synchronized void setInterleaverDepth(int depth) {
+        checkPrepared();
+        this.interleaverDepth = depth;
+    }
+
+    /**
+     * append a crc to every frame, the receiver drops frames with a wrong one instead of
+     * delivering garbage. important: set the same crc code for the receiver
+     *
+     * @param crcCode
+     */
+    public synchronized void setCrcCode(CrcCode crcCode) {
+        checkPrepared();
+        this.crcCode = crcCode;
+    }
+
     /**
      * pro users only
      * call only if you know what you're doing and be sure to set the value to the same on the receiver side
@@ -195,17 +530,236 @@ public class ComFrameSender {
     }
 
     /**
-     * sends a single bit
+     * set if you want to send on another frequency. with several carriers this is the lowest one.
+     * important: set the same frequency for the receiver
+     *
+     * @param frequency
+     */
+    public synchronized void setFrequency(int frequency) {
+        checkPrepared();
+        this.frequency = frequency;
+    }
+
+    /**
+     * send on several carriers at once, every carrier transmits one bit per window. more carriers
+     * multiply the data rate, but every single one gets less of the volume.
+     * important: set the same count for the receiver
+     *
+     * @param carrierCount
+     */
+    public synchronized void setCarrierCount(int carrierCount) {
+        checkPrepared();
+        if (carrierCount < 1) {
+            throw new IllegalArgumentException("there has to be at least one carrier!");
+        }
+        this.carrierCount = carrierCount;
+    }
+
+    /**
+     * send the data with more than one bit per window, for example
+     * {@link DifferentialPSK#DQPSK} or {@link DifferentialPSK#D8PSK}. they need a better signal
+     * than the default {@link DifferentialPSK#DBPSK}.
+     * important: set the same scheme for the receiver
+     *
+     * @param scheme
+     */
+    public synchronized void setModulationScheme(ModulationScheme scheme) {
+        checkPrepared();
+        this.scheme = scheme;
+    }
+
+    /**
+     * send another word before every frame, for example {@link SyncWord#BARKER_13}. a longer
+     * word takes more time, but the receiver finds the frames more reliably.
+     * important: set the same word for the receiver
+     *
+     * @param syncWord
+     */
+    public synchronized void setSyncWord(SyncWord syncWord) {
+        checkPrepared();
+        this.syncWord = syncWord;
+    }
+
+    /**
+     * write the sound to another sink than the speaker of the device, for example a
+     * {@link com.dkarv.comframe.library.audio.WavFileSink} or the sink of a
+     * {@link com.dkarv.comframe.library.audio.LoopbackAudio}.
+     * the sink will be released in {@link #close()}
+     *
+     * @param audioSink
+     */
+    public synchronized void setAudioSink(AudioSink audioSink) {
+        checkPrepared();
+        this.customSink = audioSink;
+    }
+
+    /**
+     * writes the phase shift of every bit of bits to all carriers of the windows starting at
+     * window
      *
-     * @param bit
+     * @return the window after the last written one
+     */
+    private int repeatBits(boolean[] bits, double[] frame, int window) {
+        for (int i = 0; i < bits.length; i++, window++) {
+            for (int c = 0; c < carrierCount; c++) {
+                frame[window * carrierCount + c] = bits[i] ? ComFrame.PHASE_SHIFT_1 :
+                        ComFrame.PHASE_SHIFT_0;
+            }
+        }
+        return window;
+    }
+
+    /**
+     * renders the phase shifts into {@link #samples} and writes them to the sink whenever it's
+     * full. shifts contains {@link #carrierCount} phase shifts per window
+     *
+     * @param shifts
+     */
+    private void sendShifts(double[] shifts) {
+        final int n = carrierCount;
+        int windows = 0;
+        for (int i = 0; i < shifts.length; i += n) {
+            for (int c = 0; c < n; c++) {
+                double shift = shifts[i + c];
+                if (verbose) {
+                    Log.d("ComFrameSender", "send shift: " + shift);
+                }
+                if (c == 0) {
+                    modulators[c].fillArray(shift, samples, windows * bufferSize, bufferSize);
+                } else {
+                    modulators[c].addArray(shift, samples, windows * bufferSize, bufferSize);
+                }
+            }
+            windows++;
+            if (windows == RENDER_WINDOWS || i + n >= shifts.length) {
+                audioSink.write(samples, 0, windows * bufferSize);
+                windows = 0;
+            }
+        }
+    }
+
+    /**
+     * the thread that sends the queued messages of {@link #sendAsync(byte[])}
      */
-    private synchronized void sendBit(boolean bit) {
-        if (verbose) {
-            Log.d("ComFrameSender", "send bit: " + (bit ? "1" : "0"));
+    private class Transmitter extends Thread {
+        /**
+         * only used to check the length of the messages, doesn't change after prepare()
+         */
+        private final Segmenter segmenter;
+        private final BlockingQueue<FutureTask<Void>> queue;
+        /**
+         * queued by {@link #shutdown()} after the last message
+         */
+        private final FutureTask<Void> end = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        /**
+         * set by {@link #shutdown()}, no more messages are accepted then. guarded by this
+         */
+        private boolean shutdown = false;
+
+        Transmitter(Segmenter segmenter, int capacity) {
+            super("ComFrameTransmitter");
+            setDaemon(true);
+            this.segmenter = segmenter;
+            this.queue = new ArrayBlockingQueue<FutureTask<Void>>(capacity);
+        }
+
+        Future<Void> submit(final byte[] data) {
+            // fail now instead of in the future
+            segmenter.segmentCount(data.length);
+            FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    synchronized (ComFrameSender.this) {
+                        transmit(data);
+                    }
+                    return null;
+                }
+            });
+            synchronized (this) {
+                if (shutdown) {
+                    // it would end up behind the end and never be sent
+                    throw new IllegalStateException("the sender was closed!");
+                }
+                queue.add(task);
+            }
+            return task;
         }
 
-        modulator.fillArray((bit ? ComFrame.PHASE_SHIFT_1 : ComFrame.PHASE_SHIFT_0), samples, bufferSize);
-        audioTrack.write(samples, 0, bufferSize);
+        @Override
+        public void run() {
+            // if we told the listener that we're sending
+            boolean active = false;
+            try {
+                FutureTask<Void> task;
+                while ((task = queue.take()) != end) {
+                    if (!active && !task.isCancelled()) {
+                        active = true;
+                        try {
+                            beginTransmission();
+                        } catch (RuntimeException e) {
+                            // send anyway, this thread has to keep going
+                            Log.e("ComFrameSender", "onTransmitStart failed", e);
+                        }
+                    }
+                    task.run();
+                    // not in the task, a cancelled one is never called
+                    boolean idle;
+                    synchronized (ComFrameSender.this) {
+                        idle = queue.peek() == null;
+                        if (idle) {
+                            stopPlaying();
+                        }
+                    }
+                    if (idle && active) {
+                        active = false;
+                        notifyEnd();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+            // nobody waits forever for a message that won't be sent any more
+            FutureTask<Void> task;
+            while ((task = queue.poll()) != null) {
+                task.cancel(false);
+            }
+            // a failed message may have left the sink playing
+            synchronized (ComFrameSender.this) {
+                stopPlaying();
+            }
+            if (active) {
+                notifyEnd();
+            }
+        }
+
+        private void notifyEnd() {
+            try {
+                endTransmission();
+            } catch (RuntimeException e) {
+                Log.e("ComFrameSender", "onTransmitEnd failed", e);
+            }
+        }
+
+        /**
+         * sends all queued messages and stops the thread afterwards
+         */
+        void shutdown() {
+            synchronized (this) {
+                shutdown = true;
+            }
+            try {
+                queue.put(end);
+                join();
+            } catch (InterruptedException e) {
+                // don't wait any longer
+                interrupt();
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,220 @@
+package com.dkarv.comframe.library;
+
+import java.util.concurrent.Executor;
+
+/**
+ * hands the received data from the decoding thread to the listeners of a
+ * {@link ComFrameReceiver}.
+ * <p/>
+ * bits and bytes are collected until batchSize of them are pending or the oldest of them waits
+ * for maxDelay, then the whole batch is delivered at once. if there is an executor every batch
+ * is one task on it, otherwise the listeners are called on the decoding thread.
+ */
+class ListenerDispatcher {
+    private final Executor executor;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    private final ComFrame.BitListener bitListener;
+    private final ComFrame.SoftBitListener softBitListener;
+    private final ComFrame.BitBatchListener bitBatchListener;
+    private final ComFrame.StreamListener streamListener;
+    private final ComFrame.ByteBatchListener byteBatchListener;
+    private final ComFrame.MessageListener msgListener;
+
+    private final boolean wantsBits;
+    private final boolean wantsBytes;
+
+    private final boolean[] bits;
+    private final double[] softBits;
+    private int bitCount = 0;
+    /**
+     * when the oldest pending bit was added
+     */
+    private long bitsSince;
+
+    private final byte[] bytes;
+    private int byteCount = 0;
+    private long bytesSince;
+
+    /**
+     * @param executor      where the listeners are called, null to call them right away
+     * @param batchSize     deliver the bits and bytes once this many are pending
+     * @param maxDelayNanos deliver them once the oldest waits this long, 0 to only wait for
+     *                      batchSize
+     * @param maxBits       how many bits are added at most at once
+     */
+    ListenerDispatcher(Executor executor, int batchSize, long maxDelayNanos, int maxBits,
+                       ComFrame.BitListener bitListener,
+                       ComFrame.SoftBitListener softBitListener,
+                       ComFrame.BitBatchListener bitBatchListener,
+                       ComFrame.StreamListener streamListener,
+                       ComFrame.ByteBatchListener byteBatchListener,
+                       ComFrame.MessageListener msgListener) {
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.bitListener = bitListener;
+        this.softBitListener = softBitListener;
+        this.bitBatchListener = bitBatchListener;
+        this.streamListener = streamListener;
+        this.byteBatchListener = byteBatchListener;
+        this.msgListener = msgListener;
+
+        wantsBits = bitListener != null || softBitListener != null || bitBatchListener != null;
+        wantsBytes = streamListener != null || byteBatchListener != null;
+        bits = new boolean[wantsBits ? batchSize + maxBits : 0];
+        softBits = new double[softBitListener != null ? bits.length : 0];
+        // a frame carries at most 255 bytes
+        bytes = new byte[wantsBytes ? batchSize + 255 : 0];
+    }
+
+    /**
+     * @return if the msgListener has to be called
+     */
+    boolean wantsMessages() {
+        return msgListener != null;
+    }
+
+    void addBits(boolean[] newBits, double[] newSoftBits, int count) {
+        if (!wantsBits || count == 0) {
+            return;
+        }
+        if (bitCount == 0) {
+            bitsSince = System.nanoTime();
+        }
+        System.arraycopy(newBits, 0, bits, bitCount, count);
+        if (softBitListener != null) {
+            System.arraycopy(newSoftBits, 0, softBits, bitCount, count);
+        }
+        bitCount += count;
+        if (bitCount >= batchSize) {
+            flushBits();
+        }
+    }
+
+    void addBytes(byte[] newBytes, int offset, int len) {
+        if (!wantsBytes || len == 0) {
+            return;
+        }
+        if (byteCount == 0) {
+            bytesSince = System.nanoTime();
+        }
+        System.arraycopy(newBytes, offset, bytes, byteCount, len);
+        byteCount += len;
+        if (byteCount >= batchSize) {
+            flushBytes();
+        }
+    }
+
+    /**
+     * @param msg the message, it isn't touched by the caller afterwards
+     */
+    void addMessage(final byte[] msg) {
+        // the bytes of the message go first
+        flushBytes();
+        if (executor == null) {
+            msgListener.onMessageReceived(msg);
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    msgListener.onMessageReceived(msg);
+                }
+            });
+        }
+    }
+
+    /**
+     * deliver what waits longer than maxDelay, call this regularly
+     */
+    void poll() {
+        if (maxDelayNanos <= 0 || (bitCount == 0 && byteCount == 0)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (bitCount > 0 && now - bitsSince >= maxDelayNanos) {
+            flushBits();
+        }
+        if (byteCount > 0 && now - bytesSince >= maxDelayNanos) {
+            flushBytes();
+        }
+    }
+
+    /**
+     * deliver everything pending
+     */
+    void flush() {
+        flushBits();
+        flushBytes();
+    }
+
+    private void flushBits() {
+        if (bitCount == 0) {
+            return;
+        }
+        final int count = bitCount;
+        bitCount = 0;
+        if (executor == null) {
+            deliverBits(bits, softBits, count);
+        } else {
+            final boolean[] batch = new boolean[count];
+            System.arraycopy(bits, 0, batch, 0, count);
+            final double[] softBatch = new double[softBitListener != null ? count : 0];
+            System.arraycopy(softBits, 0, softBatch, 0, softBatch.length);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverBits(batch, softBatch, count);
+                }
+            });
+        }
+    }
+
+    private void flushBytes() {
+        if (byteCount == 0) {
+            return;
+        }
+        final int count = byteCount;
+        byteCount = 0;
+        if (executor == null) {
+            deliverBytes(bytes, count);
+        } else {
+            final byte[] batch = new byte[count];
+            System.arraycopy(bytes, 0, batch, 0, count);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverBytes(batch, count);
+                }
+            });
+        }
+    }
+
+    private void deliverBits(boolean[] batch, double[] softBatch, int count) {
+        if (bitBatchListener != null) {
+            bitBatchListener.onBitsReceived(batch, count);
+        }
+        if (bitListener != null) {
+            for (int i = 0; i < count; i++) {
+                bitListener.onBitReceived(batch[i]);
+            }
+        }
+        if (softBitListener != null) {
+            for (int i = 0; i < count; i++) {
+                softBitListener.onSoftBitReceived(softBatch[i]);
+            }
+        }
+    }
+
+    private void deliverBytes(byte[] batch, int count) {
+        if (byteBatchListener != null) {
+            byteBatchListener.onBytesReceived(batch, 0, count);
+        }
+        if (streamListener != null) {
+            for (int i = 0; i < count; i++) {
+                streamListener.onByteReceived(batch[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.dkarv.comframe.library.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+/**
+ * reads the sound from the mic of the device
+ */
+public class AudioRecordSource implements AudioSource {
+    private final AudioRecord audioRecord;
+
+    /**
+     * @param sampleRate        the sample rate to record with
+     * @param bufferSizeInBytes size of the internal buffer of the {@link AudioRecord}
+     */
+    public AudioRecordSource(int sampleRate, int bufferSizeInBytes) {
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSizeInBytes);
+    }
+
+    /**
+     * @return the minimum buffer size in bytes supported by the device
+     */
+    public static int getMinBufferSize(int sampleRate) {
+        return AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+    }
+
+    @Override
+    public void start() {
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int len) {
+        return audioRecord.read(buffer, offset, len);
+    }
+
+    @Override
+    public void stop() {
+        audioRecord.stop();
+    }
+
+    @Override
+    public void release() {
+        audioRecord.release();
+    }
+}
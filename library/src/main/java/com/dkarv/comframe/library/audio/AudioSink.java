@@ -0,0 +1,36 @@
+package com.dkarv.comframe.library.audio;
+
+/**
+ * the place where the {@link com.dkarv.comframe.library.ComFrameSender} writes the modulated
+ * sound to. on a device this is the speaker ({@link AudioTrackSink}), but it can also be a file or
+ * an in memory buffer.
+ * <p/>
+ * all samples are 16 bit mono PCM.
+ */
+public interface AudioSink {
+    /**
+     * called before a message is written to the sink
+     */
+    public void start();
+
+    /**
+     * write sound samples, may block until the samples are consumed like
+     * {@link android.media.AudioTrack#write(short[], int, int)} does
+     *
+     * @param buffer the samples
+     * @param offset where to start reading in buffer
+     * @param len    how many samples to write
+     * @return the number of samples written
+     */
+    public int write(short[] buffer, int offset, int len);
+
+    /**
+     * called after a message was written completely
+     */
+    public void stop();
+
+    /**
+     * free all resources, the sink isn't used any more afterwards
+     */
+    public void release();
+}
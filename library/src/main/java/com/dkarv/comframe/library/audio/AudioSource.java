@@ -0,0 +1,38 @@
+package com.dkarv.comframe.library.audio;
+
+/**
+ * the place where the {@link com.dkarv.comframe.library.ComFrameReceiver} gets its raw sound
+ * data from. on a device this is the mic ({@link AudioRecordSource}), but it can also be a file
+ * or an in memory buffer, which makes it possible to run the receiver without any audio hardware.
+ * <p/>
+ * all samples are 16 bit mono PCM.
+ */
+public interface AudioSource {
+    /**
+     * called once before the first call to {@link #read(short[], int, int)}
+     */
+    public void start();
+
+    /**
+     * read sound samples, blocks until len samples are available like
+     * {@link android.media.AudioRecord#read(short[], int, int)} does
+     *
+     * @param buffer array to store the samples in
+     * @param offset where to start writing in buffer
+     * @param len    how many samples to read
+     * @return the number of samples read
+     */
+    public int read(short[] buffer, int offset, int len);
+
+    /**
+     * called when the receiver stops listening, there may be another call to {@link #start()}.
+     * it may come from another thread while a read blocks, that read has to return then. the
+     * samples it returns are dropped, so it may also return 0 and keep them for the next start
+     */
+    public void stop();
+
+    /**
+     * free all resources, the source isn't used any more afterwards
+     */
+    public void release();
+}
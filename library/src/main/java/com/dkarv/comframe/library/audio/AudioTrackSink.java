@@ -0,0 +1,52 @@
+package com.dkarv.comframe.library.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+
+/**
+ * plays the sound on the speaker of the device
+ */
+public class AudioTrackSink implements AudioSink {
+    private final AudioTrack audioTrack;
+
+    /**
+     * @param sampleRate        the sample rate to play with
+     * @param bufferSizeInBytes size of the internal buffer of the {@link AudioTrack}
+     */
+    public AudioTrackSink(int sampleRate, int bufferSizeInBytes) {
+        audioTrack = new AudioTrack(
+                AudioManager.STREAM_MUSIC, sampleRate,
+                AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, bufferSizeInBytes,
+                AudioTrack.MODE_STREAM);
+    }
+
+    /**
+     * @return the minimum buffer size in bytes supported by the device
+     */
+    public static int getMinBufferSize(int sampleRate) {
+        return AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+    }
+
+    @Override
+    public void start() {
+        audioTrack.play();
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int len) {
+        return audioTrack.write(buffer, offset, len);
+    }
+
+    @Override
+    public void stop() {
+        audioTrack.stop();
+    }
+
+    @Override
+    public void release() {
+        audioTrack.release();
+    }
+}
@@ -0,0 +1,157 @@
+package com.dkarv.comframe.library.audio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * reads another source on an own capture thread, so a slow reader (the demodulation, the
+ * decoding and the listeners) never stalls the recording and the buffer of the
+ * {@link android.media.AudioRecord} can't overflow.
+ * <p/>
+ * the capture thread only copies the samples into a {@link ShortRingBuffer}. if the reader falls
+ * behind so far that the ring is full, the capture thread drops the samples it just read and counts
+ * an overrun instead of waiting, see {@link #getOverrunCount()}. if the source fails with an
+ * error code, the capture stops and the reader gets the samples captured so far, see
+ * {@link #getError()}.
+ */
+public class CaptureAudioSource implements AudioSource {
+    /**
+     * how long a waiting reader sleeps at most before it checks again
+     */
+    private static final long MAX_WAIT_NANOS = 10 * 1000 * 1000;
+    /**
+     * how long the capture thread sleeps when the source had no samples yet
+     */
+    private static final long EMPTY_WAIT_NANOS = 1000 * 1000;
+
+    private final AudioSource source;
+    private final ShortRingBuffer ring;
+    /**
+     * how many samples the capture thread reads from source at once
+     */
+    private final int chunkSize;
+
+    private volatile boolean capturing = false;
+    private Thread captureThread;
+    /**
+     * the reader if it is waiting for samples, the capture thread wakes it up
+     */
+    private volatile Thread waiting;
+
+    private volatile int overruns = 0;
+    private volatile long droppedSamples = 0;
+    private volatile int error = 0;
+
+    /**
+     * @param source    the source to capture, usually an {@link AudioRecordSource}
+     * @param capacity  how many samples the ring buffer holds
+     * @param chunkSize how many samples are read from source at once
+     */
+    public CaptureAudioSource(AudioSource source, int capacity, int chunkSize) {
+        if (chunkSize < 1 || chunkSize > capacity) {
+            throw new IllegalArgumentException("chunkSize has to be between 1 and capacity");
+        }
+        this.source = source;
+        this.ring = new ShortRingBuffer(capacity);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public synchronized void start() {
+        ring.clear();
+        error = 0;
+        source.start();
+        capturing = true;
+        captureThread = new CaptureThread();
+        captureThread.start();
+    }
+
+    /**
+     * blocks until len samples were captured, only one thread may read
+     */
+    @Override
+    public int read(short[] buffer, int offset, int len) {
+        int n = 0;
+        while (n < len) {
+            n += ring.poll(buffer, offset + n, len - n);
+            if (n < len) {
+                if (!capturing) {
+                    break;
+                }
+                waiting = Thread.currentThread();
+                // check again, the capture thread might have written before it saw us waiting
+                if (ring.available() == 0) {
+                    LockSupport.parkNanos(this, MAX_WAIT_NANOS);
+                }
+                waiting = null;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void stop() {
+        capturing = false;
+        if (captureThread != null) {
+            try {
+                captureThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            captureThread = null;
+        }
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+
+    /**
+     * @return how often the capture thread had to drop samples because the ring was full
+     */
+    public int getOverrunCount() {
+        return overruns;
+    }
+
+    /**
+     * @return how many samples were dropped in total
+     */
+    public long getDroppedSampleCount() {
+        return droppedSamples;
+    }
+
+    /**
+     * @return the negative code the source returned when the capture stopped because of it, 0
+     * if it didn't fail
+     */
+    public int getError() {
+        return error;
+    }
+
+    private class CaptureThread extends Thread {
+        @Override
+        public void run() {
+            short[] chunk = new short[chunkSize];
+            while (capturing) {
+                int n = source.read(chunk, 0, chunkSize);
+                if (n < 0) {
+                    // retrying won't help, let the reader return what is left
+                    error = n;
+                    capturing = false;
+                } else if (n == 0) {
+                    LockSupport.parkNanos(this, EMPTY_WAIT_NANOS);
+                    continue;
+                } else if (!ring.offer(chunk, 0, n)) {
+                    // only this thread writes the counters
+                    overruns++;
+                    droppedSamples += n;
+                }
+                Thread reader = waiting;
+                if (reader != null) {
+                    LockSupport.unpark(reader);
+                }
+            }
+        }
+    }
+}
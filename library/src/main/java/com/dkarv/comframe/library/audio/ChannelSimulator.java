@@ -0,0 +1,284 @@
+package com.dkarv.comframe.library.audio;
+
+import java.util.Random;
+
+/**
+ * simulates the way through the air from the speaker of one device to the mic of another, to
+ * test the receiver under repeatable conditions without any audio hardware. the sound passes
+ * these impairments in order:
+ * <ol>
+ * <li>echoes of the room, see {@link #addEcho(int, double)}</li>
+ * <li>attenuation, see {@link #setAttenuation(double)}</li>
+ * <li>a sample rate offset between the two devices, see {@link #setSampleRateOffset(double)}</li>
+ * <li>white gaussian noise, see {@link #setSnr(double)}</li>
+ * <li>clipping of the mic, see {@link #setClipLevel(double)}</li>
+ * <li>samples dropped by the recording, see {@link #setDrops(double, int)}</li>
+ * </ol>
+ * all randomness comes from one seeded {@link Random}, so the same seed and the same input always
+ * give the same output. the simulator keeps its state between two calls of
+ * {@link #process(short[], int, int, short[], int)}, the sound can be passed in any pieces. the
+ * output is delayed by 8 samples.
+ */
+public class ChannelSimulator {
+    /**
+     * the sample rate offset is simulated by interpolating with a lanczos windowed sinc of TAPS
+     * taps, precomputed for PHASES positions between two samples. linear interpolation would
+     * damp the carriers near the nyquist frequency by up to 12 dB
+     */
+    private static final int TAPS = 16;
+    private static final int PHASES = 256;
+    private static final double[] FILTER = new double[(PHASES + 1) * TAPS];
+
+    static {
+        for (int q = 0; q <= PHASES; q++) {
+            double sum = 0;
+            for (int j = 0; j < TAPS; j++) {
+                double d = j - TAPS / 2 + 1 - q / (double) PHASES;
+                FILTER[q * TAPS + j] = sinc(d) * sinc(d / (TAPS / 2));
+                sum += FILTER[q * TAPS + j];
+            }
+            // don't change the volume
+            for (int j = 0; j < TAPS; j++) {
+                FILTER[q * TAPS + j] /= sum;
+            }
+        }
+    }
+
+    private final long seed;
+    private Random random;
+
+    /**
+     * delay and gain of every echo
+     */
+    private int[] echoDelays = new int[0];
+    private double[] echoGains = new double[0];
+    /**
+     * the last input samples for the echoes, a ring buffer
+     */
+    private double[] history = new double[1];
+    private int historyPos = 0;
+
+    private double gain = 1;
+    private double snr = Double.POSITIVE_INFINITY;
+    /**
+     * standard deviation of the noise in samples, 0 for no noise
+     */
+    private double noise = 0;
+    private double clipLevel = Short.MAX_VALUE;
+    /**
+     * how many input samples one output sample advances
+     */
+    private double step = 1;
+    /**
+     * the last TAPS input samples for the interpolation, the newest at the end
+     */
+    private double[] recent = new double[TAPS];
+    /**
+     * position of the next output sample after the input sample TAPS / 2 ago, in input samples
+     */
+    private double position = 0;
+
+    private double dropRate = 0;
+    private int dropLength = 0;
+    /**
+     * how many samples are still dropped
+     */
+    private int dropping = 0;
+
+    public ChannelSimulator(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * add an echo, for example the reflection of a wall
+     *
+     * @param delay in samples after the direct sound
+     * @param gain  relative to the direct sound, negative to invert it
+     */
+    public void addEcho(int delay, double gain) {
+        if (delay < 1) {
+            throw new IllegalArgumentException("an echo comes after the direct sound!");
+        }
+        int n = echoDelays.length;
+        int[] delays = new int[n + 1];
+        double[] gains = new double[n + 1];
+        System.arraycopy(echoDelays, 0, delays, 0, n);
+        System.arraycopy(echoGains, 0, gains, 0, n);
+        delays[n] = delay;
+        gains[n] = gain;
+        echoDelays = delays;
+        echoGains = gains;
+        if (delay >= history.length) {
+            history = new double[delay + 1];
+            historyPos = 0;
+        }
+    }
+
+    /**
+     * @param db how much quieter the sound arrives, 0 by default
+     */
+    public void setAttenuation(double db) {
+        gain = Math.pow(10, -db / 20);
+        updateNoise();
+    }
+
+    /**
+     * add white gaussian noise
+     *
+     * @param db signal to noise ratio relative to a sine with full amplitude that passed the
+     *           attenuation, {@link Double#POSITIVE_INFINITY} for no noise
+     */
+    public void setSnr(double db) {
+        snr = db;
+        updateNoise();
+    }
+
+    private void updateNoise() {
+        // a full scale sine has a power of amplitude^2 / 2
+        noise = Short.MAX_VALUE * gain / Math.sqrt(2) * Math.pow(10, -snr / 20);
+    }
+
+    /**
+     * @param level the mic clips everything louder than this, relative to full scale
+     */
+    public void setClipLevel(double level) {
+        clipLevel = level * Short.MAX_VALUE;
+    }
+
+    /**
+     * let the clock of the receiver run faster than the one of the sender
+     *
+     * @param ppm how much faster in millionths, negative if it runs slower
+     */
+    public void setSampleRateOffset(double ppm) {
+        step = 1 / (1 + ppm * 1e-6);
+    }
+
+    /**
+     * drop samples like a recording that can't keep up
+     *
+     * @param rate   probability that a drop starts at a sample
+     * @param length how many samples are dropped at once
+     */
+    public void setDrops(double rate, int length) {
+        this.dropRate = rate;
+        this.dropLength = length;
+    }
+
+    /**
+     * @return how many output samples {@link #process(short[], int, int, short[], int)} writes
+     * at most for len input samples
+     */
+    public int getMaxOutput(int len) {
+        return (int) Math.ceil(len / step) + 1;
+    }
+
+    /**
+     * forget all sound and start the random numbers from the seed again
+     */
+    public void reset() {
+        random = new Random(seed);
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        historyPos = 0;
+        position = 0;
+        for (int i = 0; i < TAPS; i++) {
+            recent[i] = 0;
+        }
+        dropping = 0;
+    }
+
+    /**
+     * passes sound through the channel
+     *
+     * @param in        the sound sent
+     * @param inOffset  where to start reading in in
+     * @param len       how many samples to read
+     * @param out       the sound received, needs space for {@link #getMaxOutput(int)} samples
+     * @param outOffset where to start writing in out
+     * @return how many samples were written to out
+     */
+    public int process(short[] in, int inOffset, int len, short[] out, int outOffset) {
+        int written = 0;
+        for (int i = 0; i < len; i++) {
+            double sample = in[inOffset + i];
+            history[historyPos] = sample;
+            for (int e = 0; e < echoDelays.length; e++) {
+                int pos = historyPos - echoDelays[e];
+                if (pos < 0) {
+                    pos += history.length;
+                }
+                sample += echoGains[e] * history[pos];
+            }
+            historyPos = historyPos + 1 == history.length ? 0 : historyPos + 1;
+            sample *= gain;
+
+            System.arraycopy(recent, 1, recent, 0, TAPS - 1);
+            recent[TAPS - 1] = sample;
+
+            // all output samples between the input samples TAPS / 2 and TAPS / 2 - 1 ago
+            while (position < 1) {
+                int phase = (int) Math.round(position * PHASES) * TAPS;
+                double v = 0;
+                for (int j = 0; j < TAPS; j++) {
+                    v += recent[j] * FILTER[phase + j];
+                }
+                position += step;
+                if (noise > 0) {
+                    v += random.nextGaussian() * noise;
+                }
+                v = Math.max(-clipLevel, Math.min(clipLevel, v));
+                if (dropping == 0 && dropRate > 0 && random.nextDouble() < dropRate) {
+                    dropping = dropLength;
+                }
+                if (dropping > 0) {
+                    dropping--;
+                    continue;
+                }
+                out[outOffset + written++] = (short) Math.max(Short.MIN_VALUE,
+                        Math.min(Short.MAX_VALUE, Math.round(v)));
+            }
+            position -= 1;
+        }
+        return written;
+    }
+
+    private static double sinc(double x) {
+        return x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * @return a sink which writes everything to sink after passing it through the channel
+     */
+    public AudioSink wrap(final AudioSink sink) {
+        return new AudioSink() {
+            private short[] buffer = new short[0];
+
+            @Override
+            public void start() {
+                sink.start();
+            }
+
+            @Override
+            public int write(short[] samples, int offset, int len) {
+                if (buffer.length < getMaxOutput(len)) {
+                    buffer = new short[getMaxOutput(len)];
+                }
+                sink.write(buffer, 0, process(samples, offset, len, buffer, 0));
+                return len;
+            }
+
+            @Override
+            public void stop() {
+                sink.stop();
+            }
+
+            @Override
+            public void release() {
+                sink.release();
+            }
+        };
+    }
+}
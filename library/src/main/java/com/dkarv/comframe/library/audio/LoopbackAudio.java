@@ -0,0 +1,156 @@
+package com.dkarv.comframe.library.audio;
+
+/**
+ * connects a {@link com.dkarv.comframe.library.ComFrameSender} directly with a
+ * {@link com.dkarv.comframe.library.ComFrameReceiver} in memory, without any speaker or mic in
+ * between. everything written to {@link #getSink()} can be read from {@link #getSource()}.
+ * <p/>
+ * there is no timing involved, so the data is processed as fast as the cpu allows which is
+ * usually a lot faster than real time.
+ */
+public class LoopbackAudio {
+    private short[] data;
+    private int readPos = 0;
+    private int count = 0;
+    private boolean closed = false;
+    /**
+     * the source was stopped, a blocked read returns 0 and leaves the samples for the next read
+     */
+    private boolean stopped = false;
+
+    private final AudioSource source = new LoopbackSource();
+    private final AudioSink sink = new LoopbackSink();
+
+    public LoopbackAudio() {
+        this(1 << 16);
+    }
+
+    /**
+     * @param initialCapacity how many samples can be stored before the internal buffer has to grow
+     */
+    public LoopbackAudio(int initialCapacity) {
+        data = new short[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * @return the source to hand to the receiver
+     */
+    public AudioSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return the sink to hand to the sender
+     */
+    public AudioSink getSink() {
+        return sink;
+    }
+
+    /**
+     * marks the end of the stream. reads won't block any more and return silence once all written
+     * samples were consumed, like a mic in a quiet room.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * @return how many samples are written but not read yet
+     */
+    public synchronized int available() {
+        return count;
+    }
+
+    private synchronized int put(short[] buffer, int offset, int len) {
+        if (count + len > data.length) {
+            short[] bigger = new short[Math.max(data.length * 2, count + len)];
+            int first = Math.min(count, data.length - readPos);
+            System.arraycopy(data, readPos, bigger, 0, first);
+            System.arraycopy(data, 0, bigger, first, count - first);
+            data = bigger;
+            readPos = 0;
+        }
+        int writePos = (readPos + count) % data.length;
+        int first = Math.min(len, data.length - writePos);
+        System.arraycopy(buffer, offset, data, writePos, first);
+        System.arraycopy(buffer, offset + first, data, 0, len - first);
+        count += len;
+        notifyAll();
+        return len;
+    }
+
+    private synchronized int take(short[] buffer, int offset, int len) {
+        while (count < len && !closed && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (stopped && count < len && !closed) {
+            // keep them for the next start, a part of a window is of no use
+            return 0;
+        }
+        int n = Math.min(len, count);
+        int first = Math.min(n, data.length - readPos);
+        System.arraycopy(data, readPos, buffer, offset, first);
+        System.arraycopy(data, 0, buffer, offset + first, n - first);
+        readPos = (readPos + n) % data.length;
+        count -= n;
+        if (closed) {
+            // fill up with silence
+            for (int i = offset + n; i < offset + len; i++) {
+                buffer[i] = 0;
+            }
+            return len;
+        }
+        return n;
+    }
+
+    private synchronized void setStopped(boolean stopped) {
+        this.stopped = stopped;
+        notifyAll();
+    }
+
+    private class LoopbackSource implements AudioSource {
+        @Override
+        public void start() {
+            setStopped(false);
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int len) {
+            return take(buffer, offset, len);
+        }
+
+        @Override
+        public void stop() {
+            setStopped(true);
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private class LoopbackSink implements AudioSink {
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int write(short[] buffer, int offset, int len) {
+            return put(buffer, offset, len);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
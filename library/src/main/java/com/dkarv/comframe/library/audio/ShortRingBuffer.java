@@ -0,0 +1,101 @@
+package com.dkarv.comframe.library.audio;
+
+/**
+ * a lock free ring buffer for samples with exactly one thread writing and one thread reading.
+ * <p/>
+ * both sides only count how many samples they have written or read so far. every counter is
+ * written by one thread only, the volatile write after copying the samples publishes them to the
+ * other thread. so neither side ever has to wait for the other one.
+ */
+public class ShortRingBuffer {
+    private final short[] data;
+    /**
+     * capacity - 1, the capacity is a power of two
+     */
+    private final int mask;
+
+    /**
+     * samples written so far, only changed by the writer
+     */
+    private volatile long written = 0;
+    /**
+     * samples read so far, only changed by the reader
+     */
+    private volatile long read = 0;
+
+    /**
+     * @param capacity how many samples fit into the buffer, rounded up to a power of two
+     */
+    public ShortRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        data = new short[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return how many samples fit into the buffer
+     */
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * @return how many samples can be read right now
+     */
+    public int available() {
+        return (int) (written - read);
+    }
+
+    /**
+     * write all samples or none at all, only call this from the writing thread
+     *
+     * @param buffer the samples
+     * @param offset where to start reading in buffer
+     * @param len    how many samples to write
+     * @return false if there isn't enough space left, nothing was written then
+     */
+    public boolean offer(short[] buffer, int offset, int len) {
+        long w = written;
+        if (data.length - (int) (w - read) < len) {
+            return false;
+        }
+        int pos = (int) w & mask;
+        int first = Math.min(len, data.length - pos);
+        System.arraycopy(buffer, offset, data, pos, first);
+        System.arraycopy(buffer, offset + first, data, 0, len - first);
+        written = w + len;
+        return true;
+    }
+
+    /**
+     * read up to len samples, only call this from the reading thread
+     *
+     * @param buffer array to store the samples in
+     * @param offset where to start writing in buffer
+     * @param len    how many samples to read at most
+     * @return the number of samples read, 0 if the buffer is empty
+     */
+    public int poll(short[] buffer, int offset, int len) {
+        long r = read;
+        int n = Math.min(len, (int) (written - r));
+        int pos = (int) r & mask;
+        int first = Math.min(n, data.length - pos);
+        System.arraycopy(data, pos, buffer, offset, first);
+        System.arraycopy(data, 0, buffer, offset + first, n - first);
+        read = r + n;
+        return n;
+    }
+
+    /**
+     * drop all samples, neither thread may use the buffer during this call
+     */
+    public void clear() {
+        read = written;
+    }
+}
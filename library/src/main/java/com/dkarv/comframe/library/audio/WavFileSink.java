@@ -0,0 +1,142 @@
+package com.dkarv.comframe.library.audio;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * writes the sound to a 16 bit mono WAV file, or to a file with raw little endian PCM samples.
+ * the header of the WAV file is completed in {@link #release()}, so don't forget to call it.
+ */
+public class WavFileSink implements AudioSink {
+    private static final int HEADER_SIZE = 44;
+
+    private final File file;
+    private final int sampleRate;
+    private final boolean wavHeader;
+    private final byte[] bytes = new byte[4096];
+    private OutputStream out;
+    private int samplesWritten = 0;
+
+    /**
+     * write a WAV file
+     */
+    public WavFileSink(File file, int sampleRate) {
+        this(file, sampleRate, true);
+    }
+
+    /**
+     * @param wavHeader false to write raw PCM without any header
+     */
+    public WavFileSink(File file, int sampleRate, boolean wavHeader) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.wavHeader = wavHeader;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            if (wavHeader) {
+                // placeholder, the sizes are filled in on release()
+                out.write(new byte[HEADER_SIZE]);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't open " + file + " for writing", e);
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int len) {
+        try {
+            for (int i = 0; i < len; ) {
+                int n = Math.min(len - i, bytes.length / 2);
+                for (int j = 0; j < n; j++) {
+                    short s = buffer[offset + i + j];
+                    bytes[2 * j] = (byte) s;
+                    bytes[2 * j + 1] = (byte) (s >> 8);
+                }
+                out.write(bytes, 0, 2 * n);
+                i += n;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't write to " + file, e);
+        }
+        samplesWritten += len;
+        return len;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("can't write to " + file, e);
+        }
+    }
+
+    @Override
+    public void release() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+            out = null;
+            if (wavHeader) {
+                writeHeader();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't write to " + file, e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        int dataSize = samplesWritten * 2;
+        byte[] header = new byte[HEADER_SIZE];
+        putAscii(header, 0, "RIFF");
+        putInt(header, 4, 36 + dataSize);
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putInt(header, 16, 16);
+        // PCM, mono
+        putShort(header, 20, 1);
+        putShort(header, 22, 1);
+        putInt(header, 24, sampleRate);
+        // byte rate and block align
+        putInt(header, 28, sampleRate * 2);
+        putShort(header, 32, 2);
+        putShort(header, 34, 16);
+        putAscii(header, 36, "data");
+        putInt(header, 40, dataSize);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void putAscii(byte[] b, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            b[pos + i] = (byte) s.charAt(i);
+        }
+    }
+
+    private static void putInt(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >> 8);
+        b[pos + 2] = (byte) (value >> 16);
+        b[pos + 3] = (byte) (value >> 24);
+    }
+
+    private static void putShort(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,162 @@
+package com.dkarv.comframe.library.audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * reads the sound from a 16 bit mono WAV file. files without a RIFF header are read as raw little
+ * endian PCM. once the end of the file is reached, only silence is returned.
+ */
+public class WavFileSource implements AudioSource {
+    private final File file;
+    private final byte[] bytes = new byte[4096];
+    private InputStream in;
+    private int sampleRate = -1;
+    private boolean finished = false;
+
+    public WavFileSource(File file) {
+        this.file = file;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            readHeader();
+        } catch (IOException e) {
+            throw new RuntimeException("can't read " + file, e);
+        }
+    }
+
+    /**
+     * @return the sample rate given in the WAV header, -1 for raw PCM files
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return if the end of the file was reached
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void readHeader() throws IOException {
+        in.mark(12);
+        byte[] riff = new byte[12];
+        int n = readFully(riff, 0, 12);
+        if (n < 12 || !isAscii(riff, 0, "RIFF") || !isAscii(riff, 8, "WAVE")) {
+            // no header, raw pcm
+            in.reset();
+            return;
+        }
+        byte[] chunk = new byte[8];
+        while (true) {
+            if (readFully(chunk, 0, 8) < 8) {
+                throw new EOFException("no data chunk in " + file);
+            }
+            int size = getInt(chunk, 4);
+            if (isAscii(chunk, 0, "data")) {
+                return;
+            }
+            if (isAscii(chunk, 0, "fmt ")) {
+                byte[] fmt = new byte[size];
+                if (readFully(fmt, 0, size) < size) {
+                    throw new EOFException("fmt chunk too short in " + file);
+                }
+                int channels = getShort(fmt, 2);
+                int bits = getShort(fmt, 14);
+                if (getShort(fmt, 0) != 1 || channels != 1 || bits != 16) {
+                    throw new IllegalArgumentException("only 16 bit mono PCM is supported, " +
+                            file + " has " + channels + " channels with " + bits + " bits");
+                }
+                sampleRate = getInt(fmt, 4);
+            } else {
+                long skip = size + (size & 1);
+                while (skip > 0) {
+                    long skipped = in.skip(skip);
+                    if (skipped <= 0) {
+                        throw new EOFException("no data chunk in " + file);
+                    }
+                    skip -= skipped;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int len) {
+        int i = 0;
+        try {
+            while (i < len && !finished) {
+                int n = readFully(bytes, 0, Math.min(len - i, bytes.length / 2) * 2) / 2;
+                for (int j = 0; j < n; j++) {
+                    buffer[offset + i + j] = (short) ((bytes[2 * j] & 0xff) | (bytes[2 * j + 1] << 8));
+                }
+                i += n;
+                if (n == 0) {
+                    finished = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't read " + file, e);
+        }
+        // silence after the end of the file
+        for (; i < len; i++) {
+            buffer[offset + i] = 0;
+        }
+        return len;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new RuntimeException("can't close " + file, e);
+        }
+        in = null;
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static boolean isAscii(byte[] b, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (b[pos + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getInt(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16
+                | (b[pos + 3] & 0xff) << 24;
+    }
+
+    private static int getShort(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+    }
+}
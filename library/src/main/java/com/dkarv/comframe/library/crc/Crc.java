@@ -0,0 +1,144 @@
+package com.dkarv.comframe.library.crc;
+
+/**
+ * computes the check value appended to every frame, so the receiver can drop corrupt ones.
+ * CRC_16 is CRC-16/X-25 (the one of HDLC), CRC_32 the one of ethernet and zip. both are
+ * reflected, so they share the same slice-by-8 implementation: eight tables, one for every
+ * position of a byte in a block of 8 bytes, so that 8 bytes are processed at once.
+ */
+public class Crc {
+    private static int[][] tables16;
+    private static int[][] tables32;
+
+    private final CrcCode code;
+    private final int[][] tables;
+    /**
+     * init value and final xor, all bits of the crc set
+     */
+    private final int mask;
+
+    public Crc(CrcCode code) {
+        this.code = code;
+        switch (code) {
+            case CRC_16:
+                tables = getTables16();
+                mask = 0xFFFF;
+                break;
+            case CRC_32:
+                tables = getTables32();
+                mask = 0xFFFFFFFF;
+                break;
+            default:
+                tables = null;
+                mask = 0;
+        }
+    }
+
+    /**
+     * @return how many bytes the crc takes at the end of a frame
+     */
+    public int size() {
+        switch (code) {
+            case CRC_16:
+                return 2;
+            case CRC_32:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the crc of length bytes of data starting at offset
+     */
+    public int compute(byte[] data, int offset, int length) {
+        if (tables == null) {
+            return 0;
+        }
+        final int[] t0 = tables[0], t1 = tables[1], t2 = tables[2], t3 = tables[3];
+        final int[] t4 = tables[4], t5 = tables[5], t6 = tables[6], t7 = tables[7];
+        int crc = mask;
+        int i = offset;
+        final int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            int one = ((data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 |
+                    (data[i + 3] & 0xFF) << 24) ^ crc;
+            int two = (data[i + 4] & 0xFF) | (data[i + 5] & 0xFF) << 8 |
+                    (data[i + 6] & 0xFF) << 16 | (data[i + 7] & 0xFF) << 24;
+            crc = t7[one & 0xFF] ^ t6[(one >>> 8) & 0xFF] ^ t5[(one >>> 16) & 0xFF] ^
+                    t4[one >>> 24] ^ t3[two & 0xFF] ^ t2[(two >>> 8) & 0xFF] ^
+                    t1[(two >>> 16) & 0xFF] ^ t0[two >>> 24];
+        }
+        // the rest byte by byte
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xFF];
+        }
+        return crc ^ mask;
+    }
+
+    /**
+     * computes the crc of the first length bytes of data and writes it behind them, the highest
+     * byte first
+     *
+     * @param data has to hold length + {@link #size()} bytes
+     * @return the length including the crc
+     */
+    public int append(byte[] data, int length) {
+        int crc = compute(data, 0, length);
+        for (int i = size() - 1; i >= 0; i--) {
+            data[length++] = (byte) (crc >>> (8 * i));
+        }
+        return length;
+    }
+
+    /**
+     * @param data   length bytes followed by their crc
+     * @param length without the crc
+     * @return if the crc behind the first length bytes of data is right
+     */
+    public boolean check(byte[] data, int length) {
+        int crc = compute(data, 0, length);
+        for (int i = size() - 1; i >= 0; i--) {
+            if (data[length++] != (byte) (crc >>> (8 * i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static synchronized int[][] getTables16() {
+        if (tables16 == null) {
+            tables16 = createTables(0x8408);
+        }
+        return tables16;
+    }
+
+    private static synchronized int[][] getTables32() {
+        if (tables32 == null) {
+            tables32 = createTables(0xEDB88320);
+        }
+        return tables32;
+    }
+
+    /**
+     * @param polynomial reflected
+     */
+    private static int[][] createTables(int polynomial) {
+        int[][] tables = new int[8][256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ polynomial : crc >>> 1;
+            }
+            tables[0][i] = crc;
+        }
+        // tables[k][i] is the crc of byte i followed by k zero bytes
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int crc = tables[k - 1][i];
+                tables[k][i] = (crc >>> 8) ^ tables[0][crc & 0xFF];
+            }
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,5 @@
+package com.dkarv.comframe.library.crc;
+
+public enum CrcCode {
+    NO, CRC_16, CRC_32
+}
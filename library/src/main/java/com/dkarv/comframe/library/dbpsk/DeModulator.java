@@ -1,61 +1,189 @@
 package com.dkarv.comframe.library.dbpsk;
 
-import android.media.AudioRecord;
 import android.util.Log;
 
-import com.dkarv.comframe.library.ComFrame;
-import com.dkarv.comframe.library.ComFrameSender;
 import com.dkarv.comframe.library.math.Goertzel;
-import com.dkarv.comframe.library.tools.Bit;
+import com.dkarv.comframe.library.sync.SyncDetector;
+import com.dkarv.comframe.library.sync.SyncWord;
+import com.dkarv.comframe.library.tools.CarrierPlanner;
 import com.dkarv.comframe.library.tools.FFT;
 
 public class DeModulator {
     /**
-     * the size of our raw buffer history
+     * the part of the measured timing error that is corrected per symbol, see
+     * {@link #trackTiming(int)}
      */
-    private static final int RAW_BUFFER_SIZE = 9;
-    private static final double MAGNITUDE_THRESHOLD = 0.03;
-    private static final double ALIGNMENT_MAX_ERROR = 0.3;
+    private static final double TIMING_GAIN = 0.02;
+    /**
+     * the part of the phase error of a symbol that is corrected for the next one, see
+     * {@link #trackPhase(int, double)}
+     */
+    private static final double PHASE_GAIN = 0.05;
     /**
      * here we store the phaseOffset computed by {@link FFT#getPhaseOffset(int, int, int)}
-     * for more information about this value see the javadoc of that method
+     * for more information about this value see the javadoc of that method.
+     * this is the one of the first carrier, which is used to find the sync word
      */
     private final double phaseOffset;
     /**
-     * the audioRecord. is only needed to skip some bits after alignment to the sender,
-     * before and after that the raw data will be read in
-     * {@link com.dkarv.comframe.library.ComFrameReceiver}
+     * the phaseOffset of every carrier
+     */
+    private final double[] phaseOffsets;
+    /**
+     * how far every carrier actually turns from one window to the next. starts at phaseOffsets,
+     * corrected by the sync word and followed from there by {@link #trackPhase(int, double)}
+     */
+    private final double[] phaseCorrections;
+    /**
+     * how far the phase of every carrier turns per sample
+     */
+    private final double[] omegas;
+    /**
+     * the rotation of the first carrier over a whole and half a window, to compare windows
+     * starting at different samples
      */
-    private final AudioRecord audioRecord;
+    private final double cosWindow;
+    private final double sinWindow;
+    private final double cosHalfWindow;
+    private final double sinHalfWindow;
     public boolean debug = false;
     public boolean verbose = false;
     /**
-     * to remember in which state we are currently and what we're expecting to receive currently
+     * to remember in which state we are currently and what we're expecting to receive currently.
+     * package private so the benchmarks can measure every state on its own
      */
-    private State state = State.WAITING;
+    State state = State.WAITING;
     private int fftSize;
-    private double lastPhase;
-    private Goertzel goertzel;
+    /**
+     * how many carriers are sent at once, every carrier carries one bit per window
+     */
+    private int carriers;
+    /**
+     * how the data after the length is modulated, the sync word and the length are always sent
+     * with {@link DifferentialPSK#DBPSK}
+     */
+    private ModulationScheme scheme;
+    /**
+     * sent before every frame, see {@link SyncDetector}
+     */
+    private SyncWord syncWord;
+    private SyncDetector syncDetector;
+    /**
+     * the last phase of every carrier
+     */
+    private double[] lastPhases;
+    /**
+     * the phase differences of every carrier in the current window
+     */
+    private double[] phaseDiffs;
+    /**
+     * the magnitude of every carrier in the last window, relative to a carrier with full
+     * amplitude
+     */
+    private double[] lastMagnitudes;
+    /**
+     * the geometric mean of the magnitudes of the last two windows of every carrier, the longer
+     * the vectors are, the more we trust their phase difference
+     */
+    private double[] amplitudes;
+    /**
+     * one Goertzel for every carrier, [0] is the first carrier
+     */
+    private Goertzel[] goertzels;
     private double[] goertzelOutput = new double[2];
-    private double[] goertzelInput;
-    private double[] rawBuffer;
-    private int rawBufferCounter = 0;
     private int readLength = 0;
     private int length = 0;
     private int receiveCountDown = 0;
 
-    public DeModulator(int fftSize, int frequency, int sampleRate, AudioRecord audioRecord) {
-        this.fftSize = fftSize;
-        this.audioRecord = audioRecord;
+    /**
+     * the last four buffers after the sync word, the newest at the end. the window that is decoded
+     * starts windowDelay samples before the newest buffer, see {@link #nextWindow(short[])}
+     */
+    private short[] stream;
+    private int windowDelay = 0;
+    /**
+     * how many samples the windows are behind the symbols, filtered. moves the window once it
+     * reaches a whole sample
+     */
+    private double timingError = 0;
+    /**
+     * how far the window was moved during this frame, for the log
+     */
+    private int timingShift = 0;
+    /**
+     * the first carrier in the last window with real part out[1] and imaginary part out[0] of
+     * the Goertzel, so that its angle is the phase used everywhere else
+     */
+    private double lastReal;
+    private double lastImag;
+    /**
+     * if lastReal and lastImag belong to the window right before the current one
+     */
+    private boolean lastValid = false;
+    /**
+     * the window was moved behind the newest buffer, so the next buffer only fills the stream up
+     * and gives no window, see {@link #moveWindow(int)}
+     */
+    private boolean skipWindow = false;
 
-        goertzel = new Goertzel(fftSize, FFT.getFFTBin(frequency, fftSize, sampleRate));
-        goertzelInput = new double[fftSize];
+    public DeModulator(int fftSize, int frequency, int sampleRate) {
+        this(fftSize, new int[]{frequency}, sampleRate);
+    }
 
-        rawBuffer = new double[RAW_BUFFER_SIZE * fftSize];
+    /**
+     * receive on several carriers at once, see
+     * {@link FFT#getCarrierFrequencies(int, int, int, int)}. the sync word is searched on the
+     * first one
+     */
+    public DeModulator(int fftSize, int[] frequencies, int sampleRate) {
+        this(fftSize, frequencies, sampleRate, DifferentialPSK.DBPSK);
+    }
+
+    /**
+     * receive the data with another {@link ModulationScheme}, has to be the same as the sender's
+     */
+    public DeModulator(int fftSize, int[] frequencies, int sampleRate, ModulationScheme scheme) {
+        this(fftSize, frequencies, sampleRate, scheme, SyncWord.PRE);
+    }
 
-        // calculate the phase offset. why we get this offset is described in the javadoc of
-        // C.getPhaseOffset(...)
-        phaseOffset = FFT.getPhaseOffset(frequency, sampleRate, fftSize);
+    /**
+     * search another {@link SyncWord} before the frames, has to be the same as the sender's
+     */
+    public DeModulator(int fftSize, int[] frequencies, int sampleRate, ModulationScheme scheme,
+                       SyncWord syncWord) {
+        this.fftSize = fftSize;
+        this.scheme = scheme;
+        this.syncWord = syncWord;
+        carriers = frequencies.length;
+
+        goertzels = new Goertzel[carriers];
+        phaseOffsets = new double[carriers];
+        omegas = new double[carriers];
+        phaseCorrections = new double[carriers];
+        CarrierPlanner planner = CarrierPlanner.get(fftSize, sampleRate);
+        for (int c = 0; c < carriers; c++) {
+            goertzels[c] = planner.getGoertzel(FFT.getFFTBin(frequencies[c], fftSize,
+                    sampleRate));
+            // calculate the phase offset. why we get this offset is described in the javadoc of
+            // C.getPhaseOffset(...)
+            phaseOffsets[c] = FFT.getPhaseOffset(frequencies[c], sampleRate, fftSize);
+            omegas[c] = FFT.TWO_PI * frequencies[c] / sampleRate;
+            phaseCorrections[c] = phaseOffsets[c];
+        }
+        lastPhases = new double[carriers];
+        phaseDiffs = new double[carriers];
+        lastMagnitudes = new double[carriers];
+        amplitudes = new double[carriers];
+
+        stream = new short[4 * fftSize];
+
+        phaseOffset = phaseOffsets[0];
+        syncDetector = new SyncDetector(fftSize, FFT.getFFTBin(frequencies[0], fftSize,
+                sampleRate), phaseOffset, syncWord);
+        cosWindow = Math.cos(omegas[0] * fftSize);
+        sinWindow = Math.sin(omegas[0] * fftSize);
+        cosHalfWindow = Math.cos(omegas[0] * (fftSize / 2));
+        sinHalfWindow = Math.sin(omegas[0] * (fftSize / 2));
         if (debug || verbose) {
             Log.d("DeModulator", "phaseOffset: " + phaseOffset);
         }
@@ -66,235 +194,331 @@ public class DeModulator {
      *
      * @param buffer raw sound data
      * @param len    length of buffer
-     * @return length may vary, may also be 0
+     * @param bits   the decoded bits are written to it, has to hold
+     *               {@link #getMaxBitsPerWindow()} bits
+     * @return how many bits were decoded, may also be 0
      */
-    public boolean[] decodeRawData(short[] buffer, int len) {
-        // translate the shorts to double:
-        for (int i = 0; i < len; i++) {
-            goertzelInput[i] = (double) buffer[i] / Short.MAX_VALUE;
-        }
-
-        goertzel.goertzel(goertzelInput, goertzelOutput);
-
-        double phase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
-        double magnitude = Math.sqrt(goertzelOutput[0] * goertzelOutput[0] + goertzelOutput[1] *
-                goertzelOutput[1]);
-
-        // ensure that the phase is positive:
-        if (phase < 0) {
-            phase += FFT.TWO_PI;
-        }
-
-        // calculate the phase difference to the last phase, there's our information
-        // decoded.
-        double phaseDiff = getPhaseDiff(lastPhase, phase);//(lastPhase - phase - phaseOffset) % TWO_PI;
-        lastPhase = phase;
+    public int decodeRawData(short[] buffer, int len, boolean[] bits) {
+        return decodeRawData(buffer, len, bits, null);
+    }
 
+    /**
+     * the same as {@link #decodeRawData(short[], int, boolean[])}, but also tells how sure we are
+     * about every bit
+     *
+     * @param softBits null, or for every bit a value proportional to its log likelihood ratio.
+     *                 see {@link ModulationScheme#decodeSoft(double, double, double[], int)}.
+     *                 has to hold {@link #getMaxBitsPerWindow()} values
+     */
+    public int decodeRawData(short[] buffer, int len, boolean[] bits, double[] softBits) {
         switch (state) {
             case WAITING:
-                // save the new raw data to the buffer
-                for (int i = 0; i < fftSize; i++) {
-                    rawBuffer[i + (rawBufferCounter % RAW_BUFFER_SIZE) * fftSize] = goertzelInput[i];
-                }
-                rawBufferCounter++;
-
-                if (rawBufferCounter >= RAW_BUFFER_SIZE) {
-                    // enough samples collected. now analyze the collected samples and try to
-                    // find the best phase alignment
-                    int startAt = rawBufferCounter % RAW_BUFFER_SIZE;
-                    int bestAlignment = findPhaseAlignment(startAt, rawBuffer);
-                    if (bestAlignment >= 0) {
-                        // now decode the data in the buffer, but only continue if they contain the
-                        // starting sequence!
-                        byte b = decodeBuffer(rawBuffer, startAt, bestAlignment);
-                        // search for start sequence
-                        if (b == ComFrameSender.PRE) {
-                            if (debug || verbose) {
-                                Log.d("DeModulator", "found start of data block!!");
-                            }
-                            // the challenge is now to get a fine phase in order to save it in
-                            // lastPhase
-                            // copy the relevant part of buffer to the beginning of buffer. will
-                            // fill up the rest in the next if statement
-                            for (int i = bestAlignment, j = 0; i < fftSize; i++, j++) {
-                                buffer[j] = buffer[i];
-                                //yetAnotherBuffer[j] = buffer[i];
-                            }
-                            // skip some raw data to get in phase
-                            if (bestAlignment != 0) {
-                                //audioRecord.read(yetAnotherBuffer, fftSize - bestAlignment,
-                                //        bestAlignment);
-                                audioRecord.read(buffer, fftSize - bestAlignment,
-                                        bestAlignment);
-                            }
-
-                            for (int i = 0; i < fftSize; i++) {
-                                goertzelInput[i] = (double) buffer[i] / Short.MAX_VALUE;
-                                //anotherBuffer[i] = (double) yetAnotherBuffer[i] / Short.MAX_VALUE;
-                            }
-                            // start decoding and save the phase in lastPhase,
-                            // then in the next call we will be able to compute a phase
-                            // difference and therefor decode a bit
-                            goertzel.goertzel(goertzelInput, 0, goertzelOutput);
-                            lastPhase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
-
-                            // reset this state, clean start when will reaching it again...
-                            rawBufferCounter = 0;
-                            state = State.READ_LENGTH;
-                        }
+                int delay = syncDetector.detect(buffer);
+                if (delay >= 0) {
+                    if (debug || verbose) {
+                        Log.d("DeModulator", "found start of data block!! score: " +
+                                syncDetector.getScore());
+                    }
+                    // the last window of the sync word gives us the phases to compute the first
+                    // differences against
+                    for (int c = 0; c < carriers; c++) {
+                        syncDetector.goertzel(goertzels[c], syncWord.length(), goertzelOutput);
+                        lastPhases[c] = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
+                        lastMagnitudes[c] = Math.hypot(goertzelOutput[0], goertzelOutput[1]) * 2 /
+                                fftSize;
+                    }
+                    // start the carrier tracking where the sync word is
+                    for (int c = 0; c < carriers; c++) {
+                        phaseCorrections[c] = phaseOffsets[c] + getSyncWordError(c);
                     }
+
+                    // the first bit of the length started delay samples before buffer, so
+                    // continue the stream with the samples the detector already has
+                    syncDetector.copySamples(stream);
+                    windowDelay = delay;
+                    state = State.READ_LENGTH;
+                    decodeWindow();
+                    readLengthBit(phaseDiffs);
                 }
                 break;
             case READ_LENGTH:
-                boolean bitL = decodePhaseDifference(phaseDiff);
-                if (bitL) {
-                    length += 1 << (7 - readLength); //Math.pow(2, (7 - readLength));
-                    if (debug || verbose) {
-                        Log.d("DeModulator", "add 2^" + (7 - readLength));
-                    }
-                }
-                readLength++;
-                if (readLength == 8) {
-                    // we received the whole length, reset this state and go on to the next state
-                    if (debug || verbose) {
-                        Log.d("DeModulator", "data block length: " + length);
-                    }
-                    readLength = 0;
-                    // length is given in bytes
-                    receiveCountDown = length * 8;
-                    length = 0;
-                    state = State.RECEIVING;
+                if (nextWindow(buffer)) {
+                    readLengthBit(phaseDiffs);
                 }
                 break;
             case RECEIVING:
-                Log.d("DeModulator", "r: " + phaseDiff);
-                // once the phase is aligned, we decode as much bits as given in length
-                boolean bit = decodePhaseDifference(phaseDiff);
-                boolean[] re = {bit};
+                if (!nextWindow(buffer)) {
+                    return 0;
+                }
+                if (verbose) {
+                    Log.d("DeModulator", "r: " + phaseDiffs[0]);
+                }
+                // once the phase is aligned, we decode as much bits as given in length,
+                // one symbol from every carrier
+                final int bitsPerSymbol = scheme.getBitsPerSymbol();
+                int count = Math.min(carriers * bitsPerSymbol, receiveCountDown);
+                for (int c = 0; c * bitsPerSymbol < count; c++) {
+                    int symbol = scheme.decode(phaseDiffs[c]);
+                    trackPhase(c, scheme.getPhaseShift(symbol));
+                    for (int b = 0; b < bitsPerSymbol && c * bitsPerSymbol + b < count; b++) {
+                        // highest bit of the symbol first
+                        bits[c * bitsPerSymbol + b] =
+                                ((symbol >> (bitsPerSymbol - 1 - b)) & 1) == 1;
+                    }
+                    if (softBits != null) {
+                        scheme.decodeSoft(phaseDiffs[c], amplitudes[c], softBits,
+                                c * bitsPerSymbol);
+                    }
+                }
 
-                receiveCountDown--;
+                receiveCountDown -= count;
 
                 if (receiveCountDown == 0) {
                     if (debug || verbose) {
-                        Log.d("DeModulator", "prepared with receiving!!");
+                        Log.d("DeModulator", "prepared with receiving!! moved the window by " +
+                                timingShift + " samples");
                     }
                     reset();
                 }
-                return re;
+                return count;
         }
 
-        return new boolean[0];
+        return 0;
+    }
+
+    /**
+     * @return the most bits {@link #decodeRawData(short[], int, boolean[])} returns at once
+     */
+    public int getMaxBitsPerWindow() {
+        return carriers * scheme.getBitsPerSymbol();
     }
 
     /**
-     * because the receiver and sender side can't use the same clock to synchronize,
-     * we need another possibility to align the phase shifts between the two devices. this is
-     * done by trying different alignment values and try to find the best one out of them
+     * appends buffer to the stream and computes the phase differences of the next window.
+     * <p/>
+     * the sender's and our sample clock differ a bit, so over a long frame the symbols slowly
+     * slide against the windows we found at the sync word. the window doesn't have to start at
+     * the beginning of buffer, it may start up to two windows earlier in the stream or a bit
+     * later by waiting for the next buffer, and {@link #trackTiming(int)} moves it along with the
+     * symbols.
      *
-     * @param startAt were start to read in the buffer
-     * @param buffer  the buffer containing the raw values read from the mic
-     * @return -1 when no useful alignment value was found, the alignment value otherwise
-     */
-    private int findPhaseAlignment(int startAt, double[] buffer) {
-        /* try PARTS different alignments. 16 seems to be more than enough
-        * making this value bigger results in a lot more computing time and therefor battery
-        * consumption, making it lower results in worse alignment
-        */
-        final int PARTS = 16;
-        double lPhase, phase;
-        int best = 0;
-        double minDifference = Double.MAX_VALUE;
-        for (int i = 0; i < PARTS; i++) {
-            // try PARTS different goertzel beginnings
-            int start = (i * (fftSize / PARTS));
-            lPhase = 0.0;
-            double maxError = 0;
-            for (int j = 0; j < 8; j++) {
-                // decode always all 7 bits (the first phase is not useful because we can't
-                // compute a phase difference when we have no lastPhase)
-                goertzel.goertzel(buffer, fftSize * (j + startAt) + start, goertzelOutput);
-                phase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
-                double phaseD = getPhaseDiff(lPhase, phase);
-
-                if (j != 0) {
-                    // throw away first bit, start calculating the difference to shifts as we
-                    // expect them
-                    double diff_0 = Math.abs(phaseD - ComFrame.PHASE_SHIFT_0);
-                    double diff_1 = Math.abs(phaseD - ComFrame.PHASE_SHIFT_1);
-
-                    if (diff_0 < diff_1) {
-                        maxError = Math.abs(phaseD - ComFrame.PHASE_SHIFT_0) < maxError ?
-                                maxError : Math.abs(phaseD - ComFrame.PHASE_SHIFT_0);
-                    } else {
-                        maxError = Math.abs(phaseD - ComFrame.PHASE_SHIFT_1) < maxError ?
-                                maxError : Math.abs(phaseD - ComFrame.PHASE_SHIFT_1);
-                    }
-                }
-                lPhase = phase;
-            }
-            if (maxError < minDifference) {
-                best = i;
-                minDifference = maxError;
+     * @return false if there is no window yet because it starts in the next buffer
+     */
+    private boolean nextWindow(short[] buffer) {
+        System.arraycopy(stream, fftSize, stream, 0, 3 * fftSize);
+        System.arraycopy(buffer, 0, stream, 3 * fftSize, fftSize);
+        if (skipWindow) {
+            skipWindow = false;
+            return false;
+        }
+        decodeWindow();
+        return true;
+    }
+
+    /**
+     * computes the phase differences of the window starting windowDelay samples before the
+     * newest buffer in the stream
+     */
+    private void decodeWindow() {
+        int start = 3 * fftSize - windowDelay;
+        computePhaseDiffs(stream, start);
+        trackTiming(start);
+    }
+
+    /**
+     * a timing error detector in the style of gardner's: the window between the last and the
+     * current one holds m samples of the last symbol and fftSize - m of the current one, so its
+     * phasor is {@code (m * last + (fftSize - m) * current) / fftSize}. if the windows are exactly
+     * on the symbols, m is fftSize / 2. only works if the phase changed between the two symbols,
+     * otherwise all three phasors are the same.
+     *
+     * @param start where the current window starts in the stream
+     */
+    private void trackTiming(int start) {
+        double curReal = goertzelOutput[1];
+        double curImag = goertzelOutput[0];
+        if (lastValid) {
+            // rotate the current and the middle window back to the start of the last window,
+            // then they only differ in the data
+            double real = curReal * cosWindow - curImag * sinWindow;
+            double imag = curReal * sinWindow + curImag * cosWindow;
+            goertzels[0].goertzel(stream, start - fftSize / 2, goertzelOutput);
+            double midReal = goertzelOutput[1] * cosHalfWindow -
+                    goertzelOutput[0] * sinHalfWindow;
+            double midImag = goertzelOutput[1] * sinHalfWindow +
+                    goertzelOutput[0] * cosHalfWindow;
+
+            double diffReal = lastReal - real;
+            double diffImag = lastImag - imag;
+            double diff = diffReal * diffReal + diffImag * diffImag;
+            // only if the phase changed by more than about 60 degree
+            double energy = lastReal * lastReal + lastImag * lastImag + real * real + imag * imag;
+            if (diff > 0.5 * energy) {
+                double m = fftSize * ((midReal - real) * diffReal + (midImag - imag) * diffImag) /
+                        diff;
+                double error = Math.max(-fftSize / 8, Math.min(fftSize / 8, fftSize / 2 - m));
+                timingError += TIMING_GAIN * error;
             }
         }
-        if (minDifference < ALIGNMENT_MAX_ERROR) {
-            return best * (fftSize / PARTS);
-        } else {
-            return -1;
+        lastReal = curReal;
+        lastImag = curImag;
+        lastValid = true;
+
+        if (timingError >= 1 && windowDelay < 2 * fftSize) {
+            // the windows start after the symbols
+            moveWindow(-1);
+        } else if (timingError <= -1) {
+            moveWindow(1);
         }
+    }
 
+    /**
+     * @param samples how many samples the next window starts later, negative for earlier
+     */
+    private void moveWindow(int samples) {
+        timingError += samples;
+        timingShift += samples;
+        windowDelay -= samples;
+        if (windowDelay < 0) {
+            // the window starts after the newest buffer. take it from the next one, then it is
+            // one window behind
+            windowDelay += fftSize;
+            skipWindow = true;
+        }
+        // the next window would see the carriers turned further by the moved samples
+        for (int c = 0; c < carriers; c++) {
+            lastPhases[c] -= omegas[c] * samples;
+        }
+        lastValid = false;
     }
 
     /**
-     * helper method calculating the phase diff between two phases. we compute this value in a
-     * helper method because taking the modulo in java returns negative values also,
-     * but we always want the phase (and phase difference) between 0 and TWO_PI
+     * decision directed carrier tracking. the carrier is never exactly the frequency we expect:
+     * the speaker resamples, the clocks differ, the phone moves. so every phase difference is
+     * turned a bit further than phaseOffset says, which pushes it towards the decision boundary.
+     * we measure how far the phase difference is off the phase shift of the symbol we decided for
+     * and correct the next window by a part of it.
+     * <p/>
+     * the phase difference is the turn of the carrier per window, so this first order loop on it
+     * locks the frequency.
      *
-     * @param firstPhase
-     * @param secondPhase
-     * @return the diff between the given phases, value is >=0 and <= TWO_PI
+     * @param carrier    the carrier the current phaseDiff belongs to
+     * @param phaseShift the phase shift of the symbol decided
      */
-    private double getPhaseDiff(double firstPhase, double secondPhase) {
-        double phaseDiff = (firstPhase - secondPhase - phaseOffset) % FFT.TWO_PI;
-        return phaseDiff < 0 ? phaseDiff + FFT.TWO_PI : phaseDiff;
+    private void trackPhase(int carrier, double phaseShift) {
+        phaseCorrections[carrier] += PHASE_GAIN * getPhaseError(phaseDiffs[carrier], phaseShift);
+    }
+
+    /**
+     * @return how far the phase differences of carrier in the sync word found last are turned
+     * further than phaseOffset says, on average
+     */
+    private double getSyncWordError(int carrier) {
+        double error = 0;
+        double lPhase = 0;
+        for (int j = -1; j < syncWord.length(); j++) {
+            syncDetector.goertzel(goertzels[carrier], j + 1, goertzelOutput);
+            double phase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
+            if (j != -1) {
+                double phaseShift = DifferentialPSK.DBPSK.getPhaseShift(
+                        syncWord.getBit(j) ? 1 : 0);
+                error += getPhaseError(getPhaseDiff(lPhase, phase, phaseOffsets[carrier]),
+                        phaseShift);
+            }
+            lPhase = phase;
+        }
+        return error / syncWord.length();
+    }
+
+    /**
+     * @return the difference between the phases, in [-PI, PI)
+     */
+    private static double getPhaseError(double phaseDiff, double phaseShift) {
+        double error = phaseDiff - phaseShift;
+        if (error >= Math.PI) {
+            error -= FFT.TWO_PI;
+        } else if (error < -Math.PI) {
+            error += FFT.TWO_PI;
+        }
+        return error;
     }
 
     /**
-     * decodes one byte from the raw buffer. ensure that there are 9*fftSize values in rawBuffer
-     * such that it can decode 8 bits
+     * computes the phase of every carrier in a window, and the difference to the last phase.
+     * there's our information decoded. goertzelOutput keeps the result of the first carrier.
      *
-     * @param rawBuffer
-     * @param startAt
-     * @param bestAlignment
-     * @return
-     */
-    private byte decodeBuffer(double[] rawBuffer, int startAt, int bestAlignment) {
-        int highMagnitudes = 0;
-        double phase;
-        double lPhase = 0.0;
-        byte b = 0;
-        for (int i = startAt, j = -1; j < 8; i++, j++) {
-            goertzel.goertzel(rawBuffer, fftSize * i + bestAlignment, goertzelOutput);
-            phase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
-            if (j != -1 && Math.sqrt(goertzelOutput[0] * goertzelOutput[0] +
-                    goertzelOutput[1] * goertzelOutput[1]) > MAGNITUDE_THRESHOLD) {
-                highMagnitudes++;
+     * @param buffer raw sound data
+     * @param start  where the window starts in buffer
+     */
+    private void computePhaseDiffs(short[] buffer, int start) {
+        for (int c = carriers - 1; c >= 0; c--) {
+            // works directly on the shorts, no need to translate them to double
+            goertzels[c].goertzel(buffer, start, goertzelOutput);
+            double phase = Math.atan2(goertzelOutput[0], goertzelOutput[1]);
+            double magnitude = Math.hypot(goertzelOutput[0], goertzelOutput[1]) * 2 / fftSize;
+            amplitudes[c] = Math.sqrt(magnitude * lastMagnitudes[c]);
+            lastMagnitudes[c] = magnitude;
+
+            // ensure that the phase is positive:
+            if (phase < 0) {
+                phase += FFT.TWO_PI;
             }
-            double phaseD = getPhaseDiff(lPhase, phase);
+            phaseDiffs[c] = getPhaseDiff(lastPhases[c], phase, phaseCorrections[c]);
+            lastPhases[c] = phase;
+        }
+    }
 
-            // throw away first bit, because we can decode a phase diff the first time when we
-            // received 2 phases
-            if (j != -1) {
-                boolean bit = decodePhaseDifference(phaseD);
-                b = Bit.storeBigEndian(b, j, bit);
+    /**
+     * decodes the next bit of the length of the data block. once all 8 bits are received,
+     * we go on to {@link State#RECEIVING}
+     *
+     * @param phaseDiffs the length is sent on every carrier, the majority decides
+     */
+    private void readLengthBit(double[] phaseDiffs) {
+        int votes = 0;
+        for (int c = 0; c < carriers; c++) {
+            if (decodePhaseDifference(phaseDiffs[c])) {
+                votes++;
             }
-            lPhase = phase;
         }
-        if (highMagnitudes > 7) {
-            // only return a useful value when 8 out of 8 magnitudes were higher than MAGNITUDE_THRESHOLD
-            return b;
+        boolean bitL = votes * 2 > carriers ||
+                (votes * 2 == carriers && decodePhaseDifference(phaseDiffs[0]));
+        for (int c = 0; c < carriers; c++) {
+            trackPhase(c, DifferentialPSK.DBPSK.getPhaseShift(bitL ? 1 : 0));
+        }
+        if (bitL) {
+            length += 1 << (7 - readLength); //Math.pow(2, (7 - readLength));
+            if (debug || verbose) {
+                Log.d("DeModulator", "add 2^" + (7 - readLength));
+            }
+        }
+        readLength++;
+        if (readLength == 8) {
+            // we received the whole length, reset this state and go on to the next state
+            if (debug || verbose) {
+                Log.d("DeModulator", "data block length: " + length);
+            }
+            readLength = 0;
+            // length is given in bytes
+            receiveCountDown = length * 8;
+            length = 0;
+            state = State.RECEIVING;
         }
-        return 0;
+    }
+
+    /**
+     * helper method calculating the phase diff between two phases. we compute this value in a
+     * helper method because taking the modulo in java returns negative values also,
+     * but we always want the phase (and phase difference) between 0 and TWO_PI
+     *
+     * @param firstPhase
+     * @param secondPhase
+     * @param offset      the phaseOffset of the carrier
+     * @return the diff between the given phases, value is >=0 and <= TWO_PI
+     */
+    private double getPhaseDiff(double firstPhase, double secondPhase, double offset) {
+        double phaseDiff = (firstPhase - secondPhase - offset) % FFT.TWO_PI;
+        return phaseDiff < 0 ? phaseDiff + FFT.TWO_PI : phaseDiff;
     }
 
     /**
@@ -304,13 +528,7 @@ public class DeModulator {
      * @return the bit decoded from the phase difference
      */
     private boolean decodePhaseDifference(double phaseDiff) {
-        double diff_0 = Math.abs(phaseDiff - ComFrame.PHASE_SHIFT_0);
-        double diff_1 = Math.abs(phaseDiff - ComFrame.PHASE_SHIFT_1);
-
-        if (diff_0 < diff_1) {
-            return false;
-        }
-        return true;
+        return DifferentialPSK.DBPSK.decode(phaseDiff) == 1;
     }
 
 
@@ -319,10 +537,28 @@ public class DeModulator {
      */
     public void reset() {
         state = State.WAITING;
-        rawBufferCounter = 0;
-        lastPhase = 0.0;
+        syncDetector.reset();
+        for (int c = 0; c < carriers; c++) {
+            lastPhases[c] = 0.0;
+        }
         length = 0;
         readLength = 0;
+        windowDelay = 0;
+        timingError = 0;
+        timingShift = 0;
+        lastValid = false;
+        skipWindow = false;
+    }
+
+    /**
+     * continues in state as if a frame had started, with bitsLeft bits left to receive. package
+     * private for the benchmarks, which measure every state on its own
+     */
+    void forceState(State state, int bitsLeft) {
+        this.state = state;
+        readLength = 0;
+        length = 0;
+        receiveCountDown = bitsLeft;
     }
 
     /**
@@ -332,5 +568,5 @@ public class DeModulator {
         return state == State.RECEIVING;
     }
 
-    private enum State {WAITING, READ_LENGTH, RECEIVING}
+    enum State {WAITING, READ_LENGTH, RECEIVING}
 }
@@ -0,0 +1,104 @@
+package com.dkarv.comframe.library.dbpsk;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.tools.FFT;
+
+/**
+ * differential phase shift keying with 2^bitsPerSymbol phase shifts spread evenly over the
+ * circle. the symbols are gray coded, so neighbouring phase shifts differ in one bit only and
+ * a symbol decided wrong because of noise usually costs just one bit.
+ */
+public class DifferentialPSK implements ModulationScheme {
+    /**
+     * one bit per symbol, sends {@link ComFrame#PHASE_SHIFT_0} and {@link ComFrame#PHASE_SHIFT_1}
+     */
+    public static final DifferentialPSK DBPSK = new DifferentialPSK(1);
+    /**
+     * two bits per symbol, phase shifts in steps of PI / 2
+     */
+    public static final DifferentialPSK DQPSK = new DifferentialPSK(2);
+    /**
+     * three bits per symbol, phase shifts in steps of PI / 4. needs a good signal
+     */
+    public static final DifferentialPSK D8PSK = new DifferentialPSK(3);
+
+    private final int bitsPerSymbol;
+    /**
+     * the distance between two phase shifts
+     */
+    private final double step;
+    /**
+     * phase shift of every symbol
+     */
+    private final double[] phaseShifts;
+
+    private DifferentialPSK(int bitsPerSymbol) {
+        this.bitsPerSymbol = bitsPerSymbol;
+        int count = 1 << bitsPerSymbol;
+        step = FFT.TWO_PI / count;
+        phaseShifts = new double[count];
+        for (int k = 0; k < count; k++) {
+            // start at PHASE_SHIFT_0 so DBPSK sends the same as before
+            phaseShifts[gray(k)] = (ComFrame.PHASE_SHIFT_0 + k * step) % FFT.TWO_PI;
+        }
+    }
+
+    @Override
+    public int getBitsPerSymbol() {
+        return bitsPerSymbol;
+    }
+
+    @Override
+    public double getPhaseShift(int symbol) {
+        return phaseShifts[symbol];
+    }
+
+    @Override
+    public int decode(double phaseDiff) {
+        // index of the nearest phase shift
+        int k = (int) Math.round((phaseDiff - ComFrame.PHASE_SHIFT_0) / step);
+        k = k % phaseShifts.length;
+        if (k < 0) {
+            k += phaseShifts.length;
+        }
+        return gray(k);
+    }
+
+    /**
+     * max-log approximation: the difference between the best symbol with the bit set and the
+     * best one without it, the goodness of a symbol is the part of the measured vector pointing
+     * in its direction. for DBPSK this is 2 * amplitude * sin(phaseDiff)
+     */
+    @Override
+    public void decodeSoft(double phaseDiff, double amplitude, double[] out, int offset) {
+        for (int b = 0; b < bitsPerSymbol; b++) {
+            double best0 = -Double.MAX_VALUE;
+            double best1 = -Double.MAX_VALUE;
+            for (int symbol = 0; symbol < phaseShifts.length; symbol++) {
+                double v = Math.cos(phaseDiff - phaseShifts[symbol]);
+                if ((symbol >> (bitsPerSymbol - 1 - b) & 1) == 1) {
+                    best1 = Math.max(best1, v);
+                } else {
+                    best0 = Math.max(best0, v);
+                }
+            }
+            out[offset + b] = amplitude * (best1 - best0);
+        }
+    }
+
+    private static int gray(int k) {
+        return k ^ (k >> 1);
+    }
+
+    @Override
+    public String toString() {
+        switch (bitsPerSymbol) {
+            case 1:
+                return "DBPSK";
+            case 2:
+                return "DQPSK";
+            default:
+                return "D8PSK";
+        }
+    }
+}
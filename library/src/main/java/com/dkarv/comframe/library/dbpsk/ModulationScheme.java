@@ -0,0 +1,38 @@
+package com.dkarv.comframe.library.dbpsk;
+
+/**
+ * maps symbols to the phase shift between two windows and back. the {@link Modulator} adds the
+ * phase shift of every symbol sent, the {@link DeModulator} decides which symbol belongs to a
+ * measured phase difference.
+ * important: set the same scheme on the sender and the receiver side
+ */
+public interface ModulationScheme {
+    /**
+     * @return how many bits are sent with one symbol
+     */
+    public int getBitsPerSymbol();
+
+    /**
+     * @param symbol in [0, 2^{@link #getBitsPerSymbol()})
+     * @return the phase shift to send the symbol with, in [0, 2 * PI)
+     */
+    public double getPhaseShift(int symbol);
+
+    /**
+     * @param phaseDiff the phase difference measured between two windows, in [0, 2 * PI)
+     * @return the symbol that was most likely sent
+     */
+    public int decode(double phaseDiff);
+
+    /**
+     * soft decision: writes a value for every bit of the symbol, the highest bit first. positive
+     * means 1, negative 0, and the bigger the absolute value the surer we are. it's proportional
+     * to the log likelihood ratio of the bit
+     *
+     * @param phaseDiff the phase difference measured between two windows, in [0, 2 * PI)
+     * @param amplitude how strong the signal was in both windows, 1 is full amplitude
+     * @param out       gets {@link #getBitsPerSymbol()} values
+     * @param offset    where to write the first value in out
+     */
+    public void decodeSoft(double phaseDiff, double amplitude, double[] out, int offset);
+}
@@ -5,6 +5,16 @@ import android.util.Log;
 import com.dkarv.comframe.library.tools.FFT;
 
 public class Modulator {
+    /**
+     * the phase shifts are all multiples of HALF_PI, so there are only this many different phases
+     */
+    private static final int PHASE_STATES = 4;
+
+    /**
+     * tolerance when checking if the phaseShift is a multiple of HALF_PI
+     */
+    private static final double PHASE_STATE_EPSILON = 1e-9;
+
     public boolean debug = false;
     public boolean verbose = false;
 
@@ -17,45 +27,161 @@ public class Modulator {
 
     /**
      * add or subtract the phaseShifts from this value. will be added to every phase later in the
-     * {@link #fillArray(double, short[], int)} method
+     * {@link #fillArray(double, short[], int)} method. always between 0 and TWO_PI
      */
     private double phaseShift = 0;
 
     /**
-     * counter to remember at which part of the sine wave we're currently sending
+     * counter to remember at which part of the sine wave we're currently sending.
+     * the sine wave repeats itself after sampleRate samples, so we count modulo sampleRate and
+     * don't lose any precision on long transmissions
      */
     private int m = 0;
 
+    private final int frequency;
+    private final int sampleRate;
+
     /**
-     * frequency / samplerate
+     * cos and sin of the phase step between two samples, the phasor is rotated by this every sample
      */
-    private double fr_sr;
+    private final double stepCos;
+    private final double stepSin;
+
+    /**
+     * pre rendered windows for every phase state, only used if every window starts at the same
+     * phase of the sine wave. null otherwise
+     */
+    private short[][] symbolTable;
 
     public Modulator(int frequency, int sampleRate) {
-        this.fr_sr = (frequency * 1.0) / sampleRate;
+        this(frequency, sampleRate, Short.MAX_VALUE);
+    }
+
+    /**
+     * @param amplitude use a lower amplitude if several Modulators are added up in one array, see
+     *                  {@link #addArray(double, short[], int, int)}
+     */
+    public Modulator(int frequency, int sampleRate, short amplitude) {
+        this.amplitude = amplitude;
+        this.frequency = frequency;
+        this.sampleRate = sampleRate;
+        double step = FFT.TWO_PI * frequency / sampleRate;
+        stepCos = Math.cos(step);
+        stepSin = Math.sin(step);
     }
 
     /**
      * fill a short array with a sine wave
+     * <p/>
+     * if a window of len samples contains only whole periods of the sine wave (the frequency hits
+     * an fft bin exactly), every window looks the same for the same phase state and is just copied
+     * from a table. otherwise the sine wave is computed by rotating a phasor, which starts every
+     * window at the exactly computed phase so that no error adds up.
      *
      * @param addShift the offset that will be added to the phase
      * @param sound    array to store the sound data in. sound.length has to be >= len
      * @param len      how many shorts to write in the array
      */
     public void fillArray(double addShift, short[] sound, int len) {
+        fillArray(addShift, sound, 0, len);
+    }
+
+    /**
+     * the same as {@link #fillArray(double, short[], int)}, but starts writing at offset in sound
+     *
+     * @param addShift the offset that will be added to the phase
+     * @param sound    array to store the sound data in. sound.length has to be >= offset + len
+     * @param offset   first index in sound to write
+     * @param len      how many shorts to write in the array
+     */
+    public void fillArray(double addShift, short[] sound, int offset, int len) {
+        render(addShift, sound, offset, len, false);
+    }
+
+    /**
+     * the same as {@link #fillArray(double, short[], int, int)}, but adds the sine wave to the
+     * samples already in sound. this is used to send on several carriers at once, choose the
+     * amplitudes such that their sum fits into a short.
+     *
+     * @param addShift the offset that will be added to the phase
+     * @param sound    array to add the sound data to. sound.length has to be >= offset + len
+     * @param offset   first index in sound to write
+     * @param len      how many shorts to write in the array
+     */
+    public void addArray(double addShift, short[] sound, int offset, int len) {
+        render(addShift, sound, offset, len, true);
+    }
+
+    private void render(double addShift, short[] sound, int offset, int len, boolean add) {
         if (verbose) {
             Log.d("Modulator", "fill sound array with new shift: " + addShift);
         }
 
-        phaseShift += addShift;
-        double ph;
+        phaseShift = (phaseShift + addShift) % FFT.TWO_PI;
+        if (phaseShift < 0) {
+            phaseShift += FFT.TWO_PI;
+        }
+
+        int state = phaseState();
+        if (state >= 0 && ((long) m * frequency) % sampleRate == 0
+                && ((long) len * frequency) % sampleRate == 0) {
+            // every window starts at the beginning of the sine wave, copy it from the table
+            if (symbolTable == null || symbolTable[0].length != len) {
+                symbolTable = renderSymbols(len);
+            }
+            short[] symbol = symbolTable[state];
+            if (add) {
+                for (int i = 0; i < len; i++) {
+                    sound[offset + i] += symbol[i];
+                }
+            } else {
+                System.arraycopy(symbol, 0, sound, offset, len);
+            }
+        } else {
+            // start at the exact phase, then rotate the phasor (re, im) sample by sample
+            double ph = FFT.TWO_PI * (((long) m * frequency) % sampleRate) / sampleRate + phaseShift;
+            double re = Math.cos(ph);
+            double im = Math.sin(ph);
+            double t;
+            for (int i = offset; i < offset + len; i++) {
+                if (add) {
+                    sound[i] += (short) (im * amplitude);
+                } else {
+                    sound[i] = (short) (im * amplitude);
+                }
+                t = re * stepCos - im * stepSin;
+                im = re * stepSin + im * stepCos;
+                re = t;
+            }
+        }
+        m = (int) ((m + (long) len) % sampleRate);
+    }
+
+    /**
+     * @return which multiple of HALF_PI the phaseShift is, -1 if it isn't one
+     */
+    private int phaseState() {
+        long state = Math.round(phaseShift / FFT.HALF_PI);
+        if (Math.abs(phaseShift - state * FFT.HALF_PI) > PHASE_STATE_EPSILON) {
+            return -1;
+        }
+        return (int) (state % PHASE_STATES);
+    }
 
-        // compute the sound
-        for (int i = 0; i < len; i++) {
-            ph = m * fr_sr * FFT.TWO_PI + phaseShift;
-            sound[i] = (short) (Math.sin(ph) * amplitude);
-            m++;
+    /**
+     * renders one window of len samples for every phase state, starting at the beginning of the
+     * sine wave
+     */
+    private short[][] renderSymbols(int len) {
+        short[][] table = new short[PHASE_STATES][len];
+        for (int state = 0; state < PHASE_STATES; state++) {
+            for (int i = 0; i < len; i++) {
+                double ph = FFT.TWO_PI * (((long) i * frequency) % sampleRate) / sampleRate +
+                        state * FFT.HALF_PI;
+                table[state][i] = (short) (Math.sin(ph) * amplitude);
+            }
         }
+        return table;
     }
 
     /**
@@ -0,0 +1,85 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * spreads the encoded bits of a frame such that a burst of wrong bits hits many codewords with
+ * one wrong bit each, instead of one codeword with many. the bits are written row by row into a
+ * block of depth columns and read column by column, so neighbours on the air are depth bits apart
+ * in the codewords. a depth of at least the codeword length (7 or 15 for hamming) works best.
+ * the last row may be incomplete, its missing positions are just skipped.
+ */
+public class BlockInterleaver {
+    private final int depth;
+    /**
+     * the permuted bits before they are copied back
+     */
+    private byte[] scratch = new byte[256];
+    private double[] scratchValues = new double[0];
+
+    public BlockInterleaver(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("the depth has to be at least 1!");
+        }
+        this.depth = depth;
+    }
+
+    /**
+     * interleaves the first count bits of bits in place
+     */
+    public void interleave(byte[] bits, int count) {
+        permute(bits, count, true);
+    }
+
+    /**
+     * reverts {@link #interleave(byte[], int)} in place, count has to be the same
+     */
+    public void deinterleave(byte[] bits, int count) {
+        permute(bits, count, false);
+    }
+
+    /**
+     * the same as {@link #deinterleave(byte[], int)} for soft bits, one value per bit
+     */
+    public void deinterleave(double[] values, int count) {
+        if (scratchValues.length < count) {
+            scratchValues = new double[count];
+        }
+        int rows = (count + depth - 1) / depth;
+        int sent = 0;
+        for (int column = 0; column < depth; column++) {
+            for (int index = column, row = 0; row < rows && index < count; row++, index += depth) {
+                scratchValues[index] = values[sent++];
+            }
+        }
+        System.arraycopy(scratchValues, 0, values, 0, count);
+    }
+
+    private void permute(byte[] bits, int count, boolean interleave) {
+        int bytes = (count + 7) / 8;
+        if (scratch.length < bytes) {
+            scratch = new byte[bytes];
+        }
+        for (int i = 0; i < bytes; i++) {
+            scratch[i] = 0;
+        }
+        int rows = (count + depth - 1) / depth;
+        // position in the sent order, walks through the columns
+        int sent = 0;
+        for (int column = 0; column < depth; column++) {
+            for (int index = column, row = 0; row < rows && index < count; row++, index += depth) {
+                int from = interleave ? index : sent;
+                int to = interleave ? sent : index;
+                if ((bits[from >> 3] & (0x80 >> (from & 7))) != 0) {
+                    scratch[to >> 3] |= 0x80 >> (to & 7);
+                }
+                sent++;
+            }
+        }
+        // keep the bits behind count
+        int full = count >> 3;
+        System.arraycopy(scratch, 0, bits, 0, full);
+        if ((count & 7) != 0) {
+            int mask = 0xFF00 >> (count & 7);
+            bits[full] = (byte) ((scratch[full] & mask) | (bits[full] & ~mask));
+        }
+    }
+}
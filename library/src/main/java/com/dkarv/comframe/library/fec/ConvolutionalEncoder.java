@@ -0,0 +1,61 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * rate 1/2 convolutional code with constraint length 7 and the generator polynomials 171 and
+ * 133 (octal), the one used by nasa and in wifi. every input bit gives two output bits. the
+ * encoder is flushed with {@link #TAIL} zero bits at the end, so the {@link ViterbiDecoder}
+ * knows the final state.
+ */
+public class ConvolutionalEncoder implements FecEncoder {
+    static final int K = 7;
+    static final int TAIL = K - 1;
+    static final int STATES = 1 << (K - 1);
+    static final int POLYNOMIAL_A = 0171;
+    static final int POLYNOMIAL_B = 0133;
+
+    /**
+     * the two output bits for every content of the shift register, the newest bit is the lowest
+     */
+    static final int[] OUTPUT = new int[1 << K];
+
+    static {
+        for (int reg = 0; reg < OUTPUT.length; reg++) {
+            OUTPUT[reg] = (Integer.bitCount(reg & POLYNOMIAL_A) & 1) << 1 |
+                    (Integer.bitCount(reg & POLYNOMIAL_B) & 1);
+        }
+    }
+
+    @Override
+    public int outputBitCount(int length) {
+        return 2 * (length * 8 + TAIL);
+    }
+
+    @Override
+    public int outputByteCount(int length) {
+        return (outputBitCount(length) + 7) / 8;
+    }
+
+    @Override
+    public void encode(byte[] in, int length, byte[] out) {
+        final int steps = length * 8 + TAIL;
+        int state = 0;
+        int outBits = 0;
+        int outCount = 0;
+        int outPos = 0;
+        for (int i = 0; i < steps; i++) {
+            int bit = i < length * 8 ? (in[i >> 3] >> (7 - (i & 7))) & 1 : 0;
+            int reg = (state << 1) | bit;
+            outBits = (outBits << 2) | OUTPUT[reg];
+            outCount += 2;
+            if (outCount == 8) {
+                out[outPos++] = (byte) outBits;
+                outBits = 0;
+                outCount = 0;
+            }
+            state = reg & (STATES - 1);
+        }
+        if (outCount > 0) {
+            out[outPos] = (byte) (outBits << (8 - outCount));
+        }
+    }
+}
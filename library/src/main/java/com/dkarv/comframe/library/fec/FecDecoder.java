@@ -0,0 +1,15 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * a forward error correction code on the receiver side, decodes the bits received in one frame
+ */
+public interface FecDecoder {
+    /**
+     * @param in       the bits received, the first one is the highest of in[0]. they may contain
+     *                 some padding at the end
+     * @param bitCount how many bits of in were received
+     * @param out      the decoded bytes, has to be at least as long as in
+     * @return how many bytes were decoded, they may end with padding too
+     */
+    public int decode(byte[] in, int bitCount, byte[] out);
+}
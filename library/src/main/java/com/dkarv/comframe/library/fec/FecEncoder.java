@@ -0,0 +1,29 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * a forward error correction code on the sender side. the bits it outputs are sent in one frame,
+ * the {@link FecDecoder} of the same code gets them again on the receiver side.
+ */
+public interface FecEncoder {
+    /**
+     * @param length how many bytes are encoded
+     * @return how many bits {@link #encode(byte[], int, byte[])} writes
+     */
+    public int outputBitCount(int length);
+
+    /**
+     * @param length how many bytes are encoded
+     * @return how many bytes the output array needs
+     */
+    public int outputByteCount(int length);
+
+    /**
+     * encodes the first length bytes of in
+     *
+     * @param in
+     * @param length
+     * @param out    has to be at least {@link #outputByteCount(int)} bytes long, the first bit
+     *               to send is the highest one of out[0]
+     */
+    public void encode(byte[] in, int length, byte[] out);
+}
@@ -0,0 +1,61 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * arithmetic in GF(256) with the primitive polynomial x^8 + x^4 + x^3 + x^2 + 1. adding is a xor,
+ * multiplying and dividing go through log and antilog tables.
+ */
+public final class GaloisField {
+    private static final int PRIMITIVE = 0x11D;
+
+    /**
+     * exp[i] = alpha^i, twice as long as needed so the sum of two logs needs no modulo
+     */
+    static final int[] EXP = new int[512];
+    /**
+     * log[alpha^i] = i, log[0] is undefined
+     */
+    static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 256) {
+                x ^= PRIMITIVE;
+            }
+        }
+        for (int i = 255; i < 512; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    private GaloisField() {
+    }
+
+    public static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    public static int divide(int a, int b) {
+        if (b == 0) {
+            throw new ArithmeticException("division by zero in GF(256)");
+        }
+        if (a == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + 255 - LOG[b]];
+    }
+
+    /**
+     * @return alpha^power, power may be negative
+     */
+    public static int power(int power) {
+        power %= 255;
+        return EXP[power < 0 ? power + 255 : power];
+    }
+}
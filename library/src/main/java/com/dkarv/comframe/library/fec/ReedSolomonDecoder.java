@@ -0,0 +1,165 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * decodes the codewords of a {@link ReedSolomonEncoder}: syndromes, berlekamp massey to find the
+ * error locator, chien search for its roots and forney for the error values. if there are more
+ * wrong bytes than can be corrected, the data is returned unchanged, a crc will notice it.
+ */
+public class ReedSolomonDecoder implements FecDecoder {
+    private final int paritySymbols;
+    private final int[] syndromes;
+    /**
+     * error locator polynomial, ascending order
+     */
+    private final int[] locator;
+    private final int[] previous;
+    private final int[] temp;
+    private final int[] evaluator;
+    private final int[] positions = new int[255];
+
+    /**
+     * @param paritySymbols has to be the same as on the {@link ReedSolomonEncoder}
+     */
+    public ReedSolomonDecoder(int paritySymbols) {
+        if (paritySymbols < 2 || paritySymbols > 254) {
+            throw new IllegalArgumentException("paritySymbols has to be in [2, 254]!");
+        }
+        this.paritySymbols = paritySymbols;
+        syndromes = new int[paritySymbols];
+        locator = new int[paritySymbols + 1];
+        previous = new int[paritySymbols + 1];
+        temp = new int[paritySymbols + 1];
+        evaluator = new int[paritySymbols];
+    }
+
+    @Override
+    public int decode(byte[] in, int bitCount, byte[] out) {
+        int n = Math.min(bitCount / 8, 255);
+        int length = n - paritySymbols;
+        if (length <= 0) {
+            return 0;
+        }
+        System.arraycopy(in, 0, out, 0, n);
+        correct(out, n);
+        return length;
+    }
+
+    /**
+     * corrects the codeword of n bytes in place
+     *
+     * @return if the codeword is correct now
+     */
+    public boolean correct(byte[] codeword, int n) {
+        // syndrome i is the codeword evaluated at alpha^i, 0 for all i if there's no error
+        boolean error = false;
+        for (int i = 0; i < paritySymbols; i++) {
+            int s = 0;
+            for (int j = 0; j < n; j++) {
+                s = (s == 0 ? 0 : GaloisField.EXP[GaloisField.LOG[s] + i]) ^ (codeword[j] & 0xFF);
+            }
+            syndromes[i] = s;
+            error |= s != 0;
+        }
+        if (!error) {
+            return true;
+        }
+
+        // berlekamp massey
+        for (int i = 0; i <= paritySymbols; i++) {
+            locator[i] = 0;
+            previous[i] = 0;
+        }
+        locator[0] = 1;
+        previous[0] = 1;
+        int errors = 0;
+        int shift = 1;
+        int lastDiscrepancy = 1;
+        for (int r = 0; r < paritySymbols; r++) {
+            int discrepancy = syndromes[r];
+            for (int i = 1; i <= errors; i++) {
+                discrepancy ^= GaloisField.multiply(locator[i], syndromes[r - i]);
+            }
+            if (discrepancy == 0) {
+                shift++;
+            } else {
+                int factor = GaloisField.divide(discrepancy, lastDiscrepancy);
+                if (2 * errors <= r) {
+                    System.arraycopy(locator, 0, temp, 0, paritySymbols + 1);
+                    subtract(factor, shift);
+                    errors = r + 1 - errors;
+                    System.arraycopy(temp, 0, previous, 0, paritySymbols + 1);
+                    lastDiscrepancy = discrepancy;
+                    shift = 1;
+                } else {
+                    subtract(factor, shift);
+                    shift++;
+                }
+            }
+        }
+        if (2 * errors > paritySymbols) {
+            return false;
+        }
+
+        // chien search: byte j has the location alpha^(n - 1 - j), it's wrong if the locator has
+        // a root at the inverse
+        int found = 0;
+        for (int j = 0; j < n; j++) {
+            int inverse = 255 - (n - 1 - j);
+            int value = 0;
+            for (int i = errors; i >= 0; i--) {
+                value = (value == 0 ? 0 : GaloisField.EXP[GaloisField.LOG[value] + inverse]) ^
+                        locator[i];
+            }
+            if (value == 0) {
+                if (found == errors) {
+                    return false;
+                }
+                positions[found++] = j;
+            }
+        }
+        if (found != errors) {
+            return false;
+        }
+
+        // error evaluator = syndromes * locator mod x^paritySymbols
+        for (int i = 0; i < paritySymbols; i++) {
+            int e = 0;
+            for (int k = 0; k <= Math.min(i, errors); k++) {
+                e ^= GaloisField.multiply(locator[k], syndromes[i - k]);
+            }
+            evaluator[i] = e;
+        }
+
+        // forney: value = x * evaluator(x^-1) / locator'(x^-1) for the location x
+        for (int f = 0; f < found; f++) {
+            int j = positions[f];
+            int x = GaloisField.power(n - 1 - j);
+            int xInverse = GaloisField.power(-(n - 1 - j));
+            int numerator = 0;
+            for (int i = paritySymbols - 1; i >= 0; i--) {
+                numerator = GaloisField.multiply(numerator, xInverse) ^ evaluator[i];
+            }
+            // the formal derivative only keeps the odd powers
+            int denominator = 0;
+            for (int i = errors - (errors % 2 == 0 ? 1 : 0); i >= 1; i -= 2) {
+                denominator = GaloisField.multiply(denominator,
+                        GaloisField.multiply(xInverse, xInverse)) ^ locator[i];
+            }
+            if (denominator == 0) {
+                return false;
+            }
+            int value = GaloisField.multiply(x, GaloisField.divide(numerator, denominator));
+            codeword[j] ^= value;
+        }
+        return true;
+    }
+
+    /**
+     * locator -= factor * x^shift * previous
+     */
+    private void subtract(int factor, int shift) {
+        for (int i = shift; i <= paritySymbols; i++) {
+            locator[i] ^= GaloisField.multiply(factor, previous[i - shift]);
+        }
+    }
+}
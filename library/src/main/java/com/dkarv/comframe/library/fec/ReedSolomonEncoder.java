@@ -0,0 +1,86 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * systematic reed solomon code over GF(256): the data bytes are sent unchanged, followed by
+ * paritySymbols parity bytes. the whole frame is one (shortened) codeword, so the data and the
+ * parity together may not be longer than 255 bytes. up to paritySymbols / 2 wrong bytes are
+ * corrected, no matter how many bits of them are wrong, which makes it strong against bursts.
+ */
+public class ReedSolomonEncoder implements FecEncoder {
+    private final int paritySymbols;
+    /**
+     * log of the coefficients of the generator polynomial
+     * (x - alpha^0)(x - alpha^1)...(x - alpha^(paritySymbols - 1)), without the leading 1.
+     * the highest degree first
+     */
+    private final int[] generatorLog;
+    private final int[] parity;
+
+    /**
+     * @param paritySymbols how many parity bytes are appended, has to be the same for the
+     *                      {@link ReedSolomonDecoder}
+     */
+    public ReedSolomonEncoder(int paritySymbols) {
+        if (paritySymbols < 2 || paritySymbols > 254) {
+            throw new IllegalArgumentException("paritySymbols has to be in [2, 254]!");
+        }
+        this.paritySymbols = paritySymbols;
+        generatorLog = new int[paritySymbols];
+        parity = new int[paritySymbols];
+
+        // ascending order while multiplying it out
+        int[] g = new int[paritySymbols + 1];
+        g[0] = 1;
+        for (int i = 0; i < paritySymbols; i++) {
+            int root = GaloisField.power(i);
+            for (int j = i + 1; j > 0; j--) {
+                g[j] = g[j - 1] ^ GaloisField.multiply(g[j], root);
+            }
+            g[0] = GaloisField.multiply(g[0], root);
+        }
+        // g[paritySymbols] is the leading 1
+        for (int j = 0; j < paritySymbols; j++) {
+            generatorLog[j] = GaloisField.LOG[g[paritySymbols - 1 - j]];
+        }
+    }
+
+    @Override
+    public int outputBitCount(int length) {
+        return outputByteCount(length) * 8;
+    }
+
+    @Override
+    public int outputByteCount(int length) {
+        return length + paritySymbols;
+    }
+
+    @Override
+    public void encode(byte[] in, int length, byte[] out) {
+        if (length + paritySymbols > 255) {
+            throw new IllegalArgumentException("a reed solomon codeword can't be longer than " +
+                    "255 bytes!");
+        }
+        // the parity is the remainder of data * x^paritySymbols divided by the generator,
+        // computed like in a shift register
+        for (int j = 0; j < paritySymbols; j++) {
+            parity[j] = 0;
+        }
+        for (int i = 0; i < length; i++) {
+            int feedback = (in[i] & 0xFF) ^ parity[0];
+            for (int j = 0; j < paritySymbols - 1; j++) {
+                parity[j] = parity[j + 1];
+            }
+            parity[paritySymbols - 1] = 0;
+            if (feedback != 0) {
+                int feedbackLog = GaloisField.LOG[feedback];
+                for (int j = 0; j < paritySymbols; j++) {
+                    parity[j] ^= GaloisField.EXP[feedbackLog + generatorLog[j]];
+                }
+            }
+            out[i] = in[i];
+        }
+        for (int j = 0; j < paritySymbols; j++) {
+            out[length + j] = (byte) parity[j];
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * a {@link FecDecoder} that also uses how sure the demodulator was about every bit
+ */
+public interface SoftFecDecoder extends FecDecoder {
+    /**
+     * @param softBits for every received bit a value proportional to its log likelihood ratio,
+     *                 positive means 1, as computed by the
+     *                 {@link com.dkarv.comframe.library.dbpsk.ModulationScheme}
+     * @param count    how many bits were received
+     * @param out      the decoded bytes
+     * @return how many bytes were decoded
+     */
+    public int decodeSoft(double[] softBits, int count, byte[] out);
+}
@@ -0,0 +1,104 @@
+package com.dkarv.comframe.library.fec;
+
+/**
+ * viterbi decoder for the {@link ConvolutionalEncoder}, soft or hard decision. the path metrics
+ * of all 64 states are updated pairwise from their two predecessors, the decisions of one step
+ * fit into a single long, and the best path is traced back from state 0 once the whole frame is
+ * there. a hard decided bit is just a soft bit with confidence 1.
+ */
+public class ViterbiDecoder implements SoftFecDecoder {
+    /**
+     * bigger than any real path metric, but can't overflow when adding a branch metric
+     */
+    private static final double UNREACHABLE = Double.MAX_VALUE / 4;
+
+    private double[] metrics = new double[ConvolutionalEncoder.STATES];
+    private double[] nextMetrics = new double[ConvolutionalEncoder.STATES];
+    /**
+     * bit s of decisions[t] tells which predecessor state s came from in step t
+     */
+    private long[] decisions = new long[0];
+    /**
+     * the cost of every possible output given the two received soft bits
+     */
+    private final double[] branchMetrics = new double[4];
+    /**
+     * the hard bits translated to soft ones
+     */
+    private double[] hardBits = new double[0];
+
+    @Override
+    public int decode(byte[] in, int bitCount, byte[] out) {
+        if (hardBits.length < bitCount) {
+            hardBits = new double[bitCount];
+        }
+        for (int i = 0; i < bitCount; i++) {
+            hardBits[i] = (in[i >> 3] & (0x80 >> (i & 7))) != 0 ? 1.0 : -1.0;
+        }
+        return decodeSoft(hardBits, bitCount, out);
+    }
+
+    @Override
+    public int decodeSoft(double[] softBits, int count, byte[] out) {
+        // the encoder wrote 2 * (8 * length + TAIL) bits, padded to whole bytes
+        int length = (count / 8 - 2) / 2;
+        if (length <= 0) {
+            return 0;
+        }
+        final int steps = length * 8 + ConvolutionalEncoder.TAIL;
+        if (decisions.length < steps) {
+            decisions = new long[steps];
+        }
+        final int[] output = ConvolutionalEncoder.OUTPUT;
+        final int half = ConvolutionalEncoder.STATES / 2;
+
+        for (int s = 0; s < ConvolutionalEncoder.STATES; s++) {
+            metrics[s] = UNREACHABLE;
+        }
+        // the encoder starts in state 0
+        metrics[0] = 0;
+
+        for (int t = 0; t < steps; t++) {
+            // the cost of an output is the correlation with the received values, negated
+            double first = softBits[2 * t];
+            double second = softBits[2 * t + 1];
+            branchMetrics[0] = first + second;
+            branchMetrics[1] = first - second;
+            branchMetrics[2] = -first + second;
+            branchMetrics[3] = -first - second;
+            long decision = 0;
+            for (int s = 0; s < ConvolutionalEncoder.STATES; s++) {
+                // the predecessors of s differ in the oldest bit only
+                int low = s >> 1;
+                double m0 = metrics[low] + branchMetrics[output[s]];
+                double m1 = metrics[low + half] +
+                        branchMetrics[output[s | ConvolutionalEncoder.STATES]];
+                if (m1 < m0) {
+                    nextMetrics[s] = m1;
+                    decision |= 1L << s;
+                } else {
+                    nextMetrics[s] = m0;
+                }
+            }
+            decisions[t] = decision;
+            double[] swap = metrics;
+            metrics = nextMetrics;
+            nextMetrics = swap;
+        }
+
+        // trace back from state 0, the tail bits brought the encoder there
+        for (int i = 0; i < length; i++) {
+            out[i] = 0;
+        }
+        int state = 0;
+        for (int t = steps - 1; t >= 0; t--) {
+            int bit = state & 1;
+            if (bit == 1 && t < length * 8) {
+                out[t >> 3] |= 1 << (7 - (t & 7));
+            }
+            int from = (int) (decisions[t] >>> state) & 1;
+            state = (state >> 1) | (from * half);
+        }
+        return length;
+    }
+}
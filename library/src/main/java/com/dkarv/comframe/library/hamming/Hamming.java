@@ -2,9 +2,14 @@ package com.dkarv.comframe.library.hamming;
 
 public class Hamming {
     HammingCode code;
+    /**
+     * the tables to encode and decode whole codewords, null for {@link HammingCode#NO}
+     */
+    HammingTable table;
 
     public Hamming(HammingCode code) {
         this.code = code;
+        this.table = HammingTable.get(code);
     }
 
     public int outputSize() {
@@ -1,9 +1,22 @@
 package com.dkarv.comframe.library.hamming;
 
 
-public class HammingDecoder extends Hamming {
+import com.dkarv.comframe.library.fec.FecDecoder;
 
-    private boolean[] input;
+public class HammingDecoder extends Hamming implements FecDecoder {
+    /**
+     * returned by {@link #decode(boolean)} as long as a codeword isn't complete
+     */
+    private static final boolean[] EMPTY = new boolean[0];
+
+    /**
+     * the bits of the current codeword received so far, the first one is the highest
+     */
+    private int input;
+    /**
+     * {@link #outputSize()}, looked up once instead of for every bit
+     */
+    private final int codewordSize;
     private boolean[] output;
     private int inputCounter = 0;
 
@@ -11,8 +24,8 @@ public class HammingDecoder extends Hamming {
         super(code);
 
         // switch length because input to decoder is output from encoder
-        input = new boolean[outputSize()];
         output = new boolean[inputSize()];
+        codewordSize = outputSize();
     }
 
     /**
@@ -23,100 +36,165 @@ public class HammingDecoder extends Hamming {
         return this.decode(newBit == 1);
     }
 
+    /**
+     * collects the bits of a codeword, and decodes it once it's complete
+     *
+     * @return the decoded message bits once a codeword is complete, an empty array otherwise.
+     * the returned array is reused by the next call
+     */
     public boolean[] decode(boolean newBit) {
-        input[inputCounter] = newBit;
-        inputCounter = (inputCounter + 1) % input.length;
-        if (inputCounter == 0) {
-            // input is full, startListening decoding
-            switch (code) {
-                case NO:
-                    output[0] = input[0];
-                    break;
-                case HAMMING_7_4:
-                    decode_7_4(input, output);
-                    break;
-                case HAMMING_15_11:
-                    decode_15_11(input, output);
-                    break;
+        input = (input << 1) | (newBit ? 1 : 0);
+        inputCounter++;
+        if (inputCounter == codewordSize) {
+            // input is full, decode it
+            int message = decodeCodeword(input);
+            final int k = output.length;
+            for (int i = 0; i < k; i++) {
+                output[i] = (message >> (k - 1 - i) & 1) == 1;
             }
+            input = 0;
+            inputCounter = 0;
             return output;
         }
-        return new boolean[0];
+        return EMPTY;
+    }
+
+    /**
+     * decodes a whole codeword
+     *
+     * @param codeword {@link #outputSize()} bits, the first one received is the highest
+     * @return the {@link #inputSize()} message bits, the first one is the highest
+     */
+    public int decodeCodeword(int codeword) {
+        if (table == null) {
+            return codeword;
+        }
+        return table.decode(codeword);
+    }
+
+    /**
+     * decodes count codewords packed into in
+     *
+     * @param in    the codewords as they were received, the first bit is the highest of in[0]
+     * @param count how many codewords to decode
+     * @param out   will contain the message bits, has to hold count * {@link #inputSize()} bits
+     */
+    public void decodeCodewords(byte[] in, int count, byte[] out) {
+        if (table == null) {
+            System.arraycopy(in, 0, out, 0, (count + 7) / 8);
+            return;
+        }
+        // 8 codewords of 7/4 or 15/11 start and end at a byte in the input and in the output
+        int blocks = 0;
+        if (table.messages != null) {
+            blocks = count / 8;
+            decodeBytes(in, blocks, out);
+        } else if (table.n == 15) {
+            blocks = count / 8;
+            decodeBlocks(in, blocks, out);
+        }
+        decodeCodewords(in, blocks * 8, count - blocks * 8, out);
+    }
+
+    /**
+     * decodes count codewords of in, starting at codeword first. first has to start at a byte
+     * in the input and in the output
+     */
+    private void decodeCodewords(byte[] in, int first, int count, byte[] out) {
+        final int n = table.n;
+        final int k = table.k;
+        final int mask = (1 << n) - 1;
+
+        long inBits = 0;
+        int inCount = 0;
+        int inPos = first * n / 8;
+        long outBits = 0;
+        int outCount = 0;
+        int outPos = first * k / 8;
+        for (int i = 0; i < count; i++) {
+            while (inCount < n) {
+                inBits = (inBits << 8) | (in[inPos++] & 0xFF);
+                inCount += 8;
+            }
+            inCount -= n;
+            int codeword = (int) (inBits >>> inCount) & mask;
+
+            outBits = (outBits << k) | table.decode(codeword);
+            outCount += k;
+            while (outCount >= 8) {
+                outCount -= 8;
+                out[outPos++] = (byte) (outBits >>> outCount);
+            }
+        }
+        if (outCount > 0) {
+            out[outPos] = (byte) (outBits << (8 - outCount));
+        }
     }
 
-    private void decode_7_4(boolean[] in, boolean[] out) {
-        // calculate the check bits
-        // c1 = p1 ^ m1 ^ m2 ^ m4
-        boolean c1 = in[0] ^ in[2] ^ in[4] ^ in[6];
-        // c2 = p2 ^ m1 ^ m3 ^ m4
-        boolean c2 = in[1] ^ in[2] ^ in[5] ^ in[6];
-        // c3 = p3 ^ m2 ^ m3 ^ m4
-        boolean c3 = in[3] ^ in[4] ^ in[5] ^ in[6];
-        // now check if there was a false bit, if so flip the bit
-        if (c1 && c2 && c3) {
-            // all 3 check bits are wrong. this means the mistake is in bit m4, flip it
-            in[6] ^= true;
-        } else if (c1 && c2) {
-            in[2] ^= true;
-        } else if (c1 && c3) {
-            in[4] ^= true;
-        } else if (c2 && c3) {
-            in[5] ^= true;
+    /**
+     * 7/4 turns 7 bytes into 4, two codewords per byte
+     */
+    private void decodeBytes(byte[] in, int blocks, byte[] out) {
+        final int[] messages = table.messages;
+        int inPos = 0;
+        int outPos = 0;
+        for (int b = 0; b < blocks; b++) {
+            long block = 0;
+            for (int i = 0; i < 7; i++) {
+                block = block << 8 | (in[inPos++] & 0xFF);
+            }
+            for (int shift = 42; shift >= 0; shift -= 14) {
+                out[outPos++] = (byte) (messages[(int) (block >>> shift + 7) & 0x7F] << 4
+                        | messages[(int) (block >>> shift) & 0x7F]);
+            }
         }
-        out[0] = in[2];
-        out[1] = in[4];
-        out[2] = in[5];
-        out[3] = in[6];
     }
 
-    private void decode_15_11(boolean[] in, boolean[] out) {
-        //c1 = p1 ^ m1 ^ m2 ^ m4 ^ m5 ^ m7 ^ m9 ^ m11
-        boolean c1 = in[0] ^ in[2] ^ in[4] ^ in[6] ^ in[8] ^ in[10] ^ in[12] ^ in[14];
-        //c2 = p2 ^ m1 ^ m3 ^ m4 ^ m6 ^ m7 ^ m10 ^ m11
-        boolean c2 = in[1] ^ in[2] ^ in[5] ^ in[6] ^ in[9] ^ in[10] ^ in[13] ^ in[14];
-        //c3 = p4 ^ m2 ^ m3 ^ m4 ^ m8 ^ m9 ^ m10 ^ m11
-        boolean c3 = in[3] ^ in[4] ^ in[5] ^ in[6] ^ in[11] ^ in[12] ^ in[13] ^ in[14];
-        //c4 = p8 ^ m5 ^ m6 ^ m7 ^ m8 ^ m9 ^ m10 ^ m11
-        boolean c4 = in[7] ^ in[8] ^ in[9] ^ in[10] ^ in[11] ^ in[12] ^ in[13] ^ in[14];
-
-        if (c1 && c2 && c3 && c4) {
-            in[14] ^= true;
-        } else if (c2 && c3 && c4) {
-            in[13] ^= true;
-        } else if (c1 && c3 && c4) {
-            in[12] ^= true;
-        } else if (c3 && c4) {
-            in[11] ^= true;
-        } else if (c1 && c2 && c4) {
-            in[10] ^= true;
-        } else if (c2 && c4) {
-            in[9] ^= true;
-        } else if (c1 && c4) {
-            in[8] ^= true;
-        } else if (c1 & c2 & c3) {
-            in[6] ^= true;
-        } else if (c2 & c3) {
-            in[5] ^= true;
-        } else if (c1 & c3) {
-            in[4] ^= true;
-        } else if (c1 & c2) {
-            in[2] ^= true;
+    /**
+     * 15/11 turns 15 bytes into 11
+     */
+    private void decodeBlocks(byte[] in, int blocks, byte[] out) {
+        final HammingTable table = this.table;
+        int inPos = 0;
+        int outPos = 0;
+        for (int b = 0; b < blocks; b++) {
+            long first = 0;
+            for (int i = 0; i < 8; i++) {
+                first = first << 8 | (in[inPos++] & 0xFF);
+            }
+            long second = 0;
+            for (int i = 0; i < 7; i++) {
+                second = second << 8 | (in[inPos++] & 0xFF);
+            }
+
+            int m5 = table.decode((int) (second >>> 30) & 0x7FFF);
+            long high = (long) table.decode((int) (first >>> 49)) << 53
+                    | (long) table.decode((int) (first >>> 34) & 0x7FFF) << 42
+                    | (long) table.decode((int) (first >>> 19) & 0x7FFF) << 31
+                    | (long) table.decode((int) (first >>> 4) & 0x7FFF) << 20
+                    | (long) table.decode((int) (first & 0xF) << 11 | (int) (second >>> 45)) << 9
+                    | m5 >>> 2;
+            int low = (m5 & 3) << 22
+                    | table.decode((int) (second >>> 15) & 0x7FFF) << 11
+                    | table.decode((int) second & 0x7FFF);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out[outPos++] = (byte) (high >>> shift);
+            }
+            out[outPos++] = (byte) (low >>> 16);
+            out[outPos++] = (byte) (low >>> 8);
+            out[outPos++] = (byte) low;
         }
-        out[0] = in[2];
-        out[1] = in[4];
-        out[2] = in[5];
-        out[3] = in[6];
-        out[4] = in[8];
-        out[5] = in[9];
-        out[6] = in[10];
-        out[7] = in[11];
-        out[8] = in[12];
-        out[9] = in[13];
-        out[10] = in[14];
     }
 
+    @Override
+    public int decode(byte[] in, int bitCount, byte[] out) {
+        int count = bitCount / outputSize();
+        decodeCodewords(in, count, out);
+        return count * inputSize() / 8;
+    }
 
     public void reset() {
+        input = 0;
         inputCounter = 0;
     }
 }
@@ -1,107 +1,169 @@
 package com.dkarv.comframe.library.hamming;
 
 
-import com.dkarv.comframe.library.tools.Bit;
+import com.dkarv.comframe.library.fec.FecEncoder;
 
-public class HammingEncoder extends Hamming {
+public class HammingEncoder extends Hamming implements FecEncoder {
 
     public HammingEncoder(HammingCode code) {
         super(code);
     }
 
+    /**
+     * encodes all bytes of in, the last message is padded with 0's
+     *
+     * @param in
+     * @param out has to be at least {@link #outputByteCount(int)} bytes long
+     */
     public void encode(byte[] in, byte[] out) {
-        switch (code) {
-            case NO:
-                for (int i = 0; i < in.length; i++) {
-                    out[i] = in[i];
-                }
-                break;
-            case HAMMING_7_4:
-                encode_7_4(in, out);
-                break;
-            case HAMMING_15_11:
-                encode_15_11(in, out);
-                break;
-        }
+        encode(in, in.length, out);
     }
 
-    public int howManyHammings(int inputlength){
-        return (int) Math.ceil(inputlength * 8.0 / inputSize());
+    /**
+     * the same as {@link #encode(byte[], byte[])}, but only encodes the first length bytes of in
+     *
+     * @param in
+     * @param length
+     * @param out    has to be at least {@link #outputByteCount(int)} of length bytes long
+     */
+    @Override
+    public void encode(byte[] in, int length, byte[] out) {
+        if (table == null) {
+            System.arraycopy(in, 0, out, 0, length);
+            return;
+        }
+        if (table.byteCodewords != null) {
+            encodeBytes(in, length, out);
+            return;
+        }
+        int len = howManyHammings(length);
+        int blocks = 0;
+        if (table.n == 15) {
+            // the last block may need padding, the generic loop below does it
+            blocks = Math.min(len / 8, length / 11);
+            encodeBlocks(in, blocks, out);
+        }
+        encode(in, length, out, blocks * 8, len - blocks * 8);
     }
 
-    public int outputByteCount(int inputlength){
-        return (int) Math.ceil(howManyHammings(inputlength) * outputSize() / 8.0);
+    /**
+     * encodes count messages of in, starting at message first. first has to start at a byte
+     * in the input and in the output
+     */
+    private void encode(byte[] in, int length, byte[] out, int first, int count) {
+        final int n = table.n;
+        final int k = table.k;
+        final int mask = (1 << k) - 1;
+
+        // the input and output bits are collected in a long, so we can read and write whole
+        // bytes and look up whole codewords
+        long inBits = 0;
+        int inCount = 0;
+        int inPos = first * k / 8;
+        long outBits = 0;
+        int outCount = 0;
+        int outPos = first * n / 8;
+        for (int i = 0; i < count; i++) {
+            while (inCount < k) {
+                // pad the data with 0's if needed
+                inBits = (inBits << 8) | (inPos < length ? in[inPos] & 0xFF : 0);
+                inPos++;
+                inCount += 8;
+            }
+            inCount -= k;
+            int message = (int) (inBits >>> inCount) & mask;
+
+            outBits = (outBits << n) | table.encode(message);
+            outCount += n;
+            while (outCount >= 8) {
+                outCount -= 8;
+                out[outPos++] = (byte) (outBits >>> outCount);
+            }
+        }
+        if (outCount > 0) {
+            out[outPos] = (byte) (outBits << (8 - outCount));
+        }
     }
 
-    public void encode_7_4(byte[] in, byte[] out) {
-        int len = howManyHammings(in.length);
-        for (int i = 0; i < len; i++) {
-            int b = i * 7;
-            int a = i * 4;
-            // now process 4 bits from the input, and output 7 bits
-            // p1 = m1 ^ m2 ^ m4
-            Bit.storeBigEndian(out, b, (getBit(in, a) ^ getBit(in, a + 1) ^ getBit(in, a + 3)));
-            // p2 = m1 ^ m3 ^ m4
-            Bit.storeBigEndian(out, b + 1, (getBit(in, a) ^ getBit(in, a + 2) ^ getBit(in, a + 3)));
-            // p3 = m2 ^ m3 ^ m4
-            Bit.storeBigEndian(out, b + 3, (getBit(in, a + 1) ^ getBit(in, a + 2) ^ getBit(in, a + 3)));
-            // store the message bits also...:
-            // m1
-            Bit.storeBigEndian(out, b + 2, getBit(in, a));
-            // m2
-            Bit.storeBigEndian(out, b + 4, getBit(in, a + 1));
-            // m3
-            Bit.storeBigEndian(out, b + 5, getBit(in, a + 2));
-            // m2
-            Bit.storeBigEndian(out, b + 6, getBit(in, a + 3));
+    /**
+     * for codes with 4 message bits every byte becomes two codewords, so 4 bytes are 7 bytes
+     * with 7/4
+     */
+    private void encodeBytes(byte[] in, int length, byte[] out) {
+        final int[] codewords = table.byteCodewords;
+        final int bits = 2 * table.n;
+        int inPos = 0;
+        int outPos = 0;
+        for (; inPos + 4 <= length; inPos += 4) {
+            long block = (long) codewords[in[inPos] & 0xFF] << 3 * bits
+                    | (long) codewords[in[inPos + 1] & 0xFF] << 2 * bits
+                    | (long) codewords[in[inPos + 2] & 0xFF] << bits
+                    | codewords[in[inPos + 3] & 0xFF];
+            for (int shift = 4 * bits - 8; shift >= 0; shift -= 8) {
+                out[outPos++] = (byte) (block >>> shift);
+            }
+        }
+        long outBits = 0;
+        int outCount = 0;
+        for (; inPos < length; inPos++) {
+            outBits = (outBits << bits) | codewords[in[inPos] & 0xFF];
+            outCount += bits;
+            while (outCount >= 8) {
+                outCount -= 8;
+                out[outPos++] = (byte) (outBits >>> outCount);
+            }
+        }
+        if (outCount > 0) {
+            out[outPos] = (byte) (outBits << (8 - outCount));
         }
     }
 
-    public void encode_15_11(byte[] in, byte[] out) {
-        int len = howManyHammings(in.length);
-        for (int i = 0; i < len; i++) {
-            int b = i * 15;
-            int a = i * 11;
+    /**
+     * 15/11 turns 11 bytes into 8 codewords of 15 bytes
+     */
+    private void encodeBlocks(byte[] in, int blocks, byte[] out) {
+        final HammingTable table = this.table;
+        int inPos = 0;
+        int outPos = 0;
+        for (int b = 0; b < blocks; b++) {
+            long high = 0;
+            for (int i = 0; i < 8; i++) {
+                high = high << 8 | (in[inPos++] & 0xFF);
+            }
+            int low = (in[inPos] & 0xFF) << 16 | (in[inPos + 1] & 0xFF) << 8
+                    | (in[inPos + 2] & 0xFF);
+            inPos += 3;
 
-            // p1 = m1 ^ m2 ^ m4 ^ m5 ^ m7 ^ m9 ^ m11
-            Bit.storeBigEndian(out, b, getBit(in, a) ^ getBit(in, a + 1) ^ getBit(in, a + 3) ^ getBit(in, a + 4) ^ getBit(in, a + 6) ^ getBit(in, a + 8) ^ getBit(in, a + 10));
-            // p2 = m1 ^ m3 ^ m4 ^ m6 ^ m7 ^ m10 ^ m11
-            Bit.storeBigEndian(out, b + 1, getBit(in, a) ^ getBit(in, a + 2) ^ getBit(in, a + 3) ^ getBit(in, a + 5) ^ getBit(in, a + 6) ^ getBit(in, a + 9) ^ getBit(in, a + 10));
-            // p4 = m2 ^ m3 ^ m4 ^ m8 ^ m9 ^ m10 ^ m11
-            Bit.storeBigEndian(out, b + 3, getBit(in, a + 1) ^ getBit(in, a + 2) ^ getBit(in, a + 3) ^ getBit(in, a + 7) ^ getBit(in, a + 8) ^ getBit(in, a + 9) ^ getBit(in, a + 10));
-            // p8 = m5 ^ m6 ^ m7 ^ m8 ^ m9 ^ m10 ^ m11
-            Bit.storeBigEndian(out, b + 7, getBit(in, a + 4) ^ getBit(in, a + 5) ^ getBit(in, a + 6) ^ getBit(in, a + 7) ^ getBit(in, a + 8) ^ getBit(in, a + 9) ^ getBit(in, a + 10));
-            // m1
-            Bit.storeBigEndian(out, b + 2, getBit(in, a));
-            // m2
-            Bit.storeBigEndian(out, b + 4, getBit(in, a + 1));
-            // m3
-            Bit.storeBigEndian(out, b + 5, getBit(in, a + 2));
-            // m4
-            Bit.storeBigEndian(out, b + 6, getBit(in, a + 3));
-            // m5
-            Bit.storeBigEndian(out, b + 8, getBit(in, a + 4));
-            // m6
-            Bit.storeBigEndian(out, b + 9, getBit(in, a + 5));
-            // m7
-            Bit.storeBigEndian(out, b + 10, getBit(in, a + 6));
-            // m8
-            Bit.storeBigEndian(out, b + 11, getBit(in, a + 7));
-            // m9
-            Bit.storeBigEndian(out, b + 12, getBit(in, a + 8));
-            // m10
-            Bit.storeBigEndian(out, b + 13, getBit(in, a + 9));
-            // m11
-            Bit.storeBigEndian(out, b + 14, getBit(in, a + 10));
+            int c4 = table.encode((int) (high >>> 9) & 0x7FF);
+            long first = (long) table.encode((int) (high >>> 53)) << 49
+                    | (long) table.encode((int) (high >>> 42) & 0x7FF) << 34
+                    | (long) table.encode((int) (high >>> 31) & 0x7FF) << 19
+                    | (long) table.encode((int) (high >>> 20) & 0x7FF) << 4
+                    | c4 >>> 11;
+            long second = (long) (c4 & 0x7FF) << 45
+                    | (long) table.encode((int) (high & 0x1FF) << 2 | low >>> 22) << 30
+                    | (long) table.encode(low >>> 11 & 0x7FF) << 15
+                    | table.encode(low & 0x7FF);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out[outPos++] = (byte) (first >>> shift);
+            }
+            for (int shift = 48; shift >= 0; shift -= 8) {
+                out[outPos++] = (byte) (second >>> shift);
+            }
         }
     }
 
+    public int howManyHammings(int inputlength){
+        return (int) Math.ceil(inputlength * 8.0 / inputSize());
+    }
 
-    private boolean getBit(byte[] data, int pos) {
-        if (pos >= data.length * 8) {
-            // pad the data with if needed
-            return false;
-        }
-        return 1 == Bit.getBitFromArray(data, pos);
+    @Override
+    public int outputBitCount(int length) {
+        return howManyHammings(length) * outputSize();
+    }
+
+    @Override
+    public int outputByteCount(int inputlength){
+        return (int) Math.ceil(howManyHammings(inputlength) * outputSize() / 8.0);
     }
 }
@@ -0,0 +1,191 @@
+package com.dkarv.comframe.library.hamming;
+
+/**
+ * precomputed tables to encode and decode a whole codeword at once instead of bit by bit.
+ * a codeword of n bits is packed into an int, the first bit sent is the highest one. like on the
+ * air the parity bits are at the positions 1, 2, 4 (and 8), the message bits fill the rest in
+ * order. the same for the message of k bits, its first bit is the highest one.
+ * <p/>
+ * hamming codes are linear, so the codeword of a message is the xor of the codewords of its
+ * lower and higher bits, the same for the syndrome and the message bits of a codeword. this
+ * keeps the tables small: every table is indexed by at most 8 bits.
+ */
+final class HammingTable {
+    static final HammingTable HAMMING_7_4 = new HammingTable(7, 4);
+    static final HammingTable HAMMING_15_11 = new HammingTable(15, 11);
+
+    /**
+     * @return the table for code, null for {@link HammingCode#NO}
+     */
+    static HammingTable get(HammingCode code) {
+        switch (code) {
+            case HAMMING_7_4:
+                return HAMMING_7_4;
+            case HAMMING_15_11:
+                return HAMMING_15_11;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * bits per codeword
+     */
+    final int n;
+    /**
+     * bits per message
+     */
+    final int k;
+
+    /**
+     * codeword of the lowest 8 bits of a message
+     */
+    private final int[] encodeLow;
+    /**
+     * codeword of the remaining higher bits of a message
+     */
+    private final int[] encodeHigh;
+    /**
+     * syndrome (above bit 16) and message bits (the lower 16 bits) of the lowest 8 bits of a
+     * codeword
+     */
+    private final int[] decodeLow;
+    /**
+     * syndrome and message bits of the remaining higher bits of a codeword
+     */
+    private final int[] decodeHigh;
+    /**
+     * indexed by the syndrome, the message bit to flip, 0 if the wrong bit is a parity bit
+     */
+    private final int[] correction;
+    /**
+     * for codes with at most 8 bits, the corrected message of every codeword, null otherwise
+     */
+    final int[] messages;
+    /**
+     * for codes with 4 message bits, the two codewords of every byte, the one of the higher half
+     * first. null otherwise
+     */
+    final int[] byteCodewords;
+
+    private HammingTable(int n, int k) {
+        this.n = n;
+        this.k = k;
+
+        // position (1 based, like in the hamming code) of every message bit in the codeword
+        int[] positions = new int[k];
+        for (int p = 1, i = 0; i < k; p++) {
+            if ((p & (p - 1)) != 0) {
+                // no power of two, so no parity bit
+                positions[i++] = p;
+            }
+        }
+
+        encodeLow = new int[lowSize(k)];
+        encodeHigh = new int[highSize(k)];
+        for (int v = 0; v < encodeLow.length; v++) {
+            encodeLow[v] = encodeSlow(v, positions);
+        }
+        for (int v = 0; v < encodeHigh.length; v++) {
+            encodeHigh[v] = encodeSlow(v << 8, positions);
+        }
+
+        decodeLow = new int[lowSize(n)];
+        decodeHigh = new int[highSize(n)];
+        for (int v = 0; v < decodeLow.length; v++) {
+            decodeLow[v] = syndromeSlow(v) << 16 | extractSlow(v, positions);
+        }
+        for (int v = 0; v < decodeHigh.length; v++) {
+            decodeHigh[v] = syndromeSlow(v << 8) << 16 | extractSlow(v << 8, positions);
+        }
+
+        // the syndrome is the position of the wrong bit
+        correction = new int[n + 1];
+        for (int s = 1; s <= n; s++) {
+            correction[s] = extractSlow(1 << (n - s), positions);
+        }
+
+        if (n <= 8) {
+            messages = new int[1 << n];
+            for (int v = 0; v < messages.length; v++) {
+                messages[v] = decode(v);
+            }
+        } else {
+            messages = null;
+        }
+
+        if (k == 4) {
+            byteCodewords = new int[256];
+            for (int v = 0; v < byteCodewords.length; v++) {
+                byteCodewords[v] = encode(v >>> 4) << n | encode(v & 0xF);
+            }
+        } else {
+            byteCodewords = null;
+        }
+    }
+
+    /**
+     * @param message k bits
+     * @return the codeword of n bits
+     */
+    int encode(int message) {
+        return encodeLow[message & 0xFF] ^ encodeHigh[message >>> 8];
+    }
+
+    /**
+     * corrects a single wrong bit in codeword
+     *
+     * @param codeword n bits
+     * @return the message of k bits
+     */
+    int decode(int codeword) {
+        int bits = decodeLow[codeword & 0xFF] ^ decodeHigh[codeword >>> 8];
+        return (bits & 0xFFFF) ^ correction[bits >>> 16];
+    }
+
+    private int encodeSlow(int message, int[] positions) {
+        int codeword = 0;
+        for (int i = 0; i < k; i++) {
+            if ((message >> (k - 1 - i) & 1) == 1) {
+                codeword |= 1 << (n - positions[i]);
+            }
+        }
+        // the parity bit at position 2^b is the only one in bit b of the syndrome, set it such
+        // that the syndrome becomes 0
+        int syndrome = syndromeSlow(codeword);
+        for (int p = 1; p <= n; p <<= 1) {
+            if ((syndrome & p) != 0) {
+                codeword |= 1 << (n - p);
+            }
+        }
+        return codeword;
+    }
+
+    private int syndromeSlow(int codeword) {
+        int syndrome = 0;
+        for (int p = 1; p <= n; p++) {
+            if ((codeword >> (n - p) & 1) == 1) {
+                syndrome ^= p;
+            }
+        }
+        return syndrome;
+    }
+
+    private int extractSlow(int codeword, int[] positions) {
+        int message = 0;
+        for (int i = 0; i < k; i++) {
+            if ((codeword >> (n - positions[i]) & 1) == 1) {
+                message |= 1 << (k - 1 - i);
+            }
+        }
+        return message;
+    }
+
+    private static int lowSize(int bits) {
+        return 1 << Math.min(bits, 8);
+    }
+
+    private static int highSize(int bits) {
+        return bits > 8 ? 1 << (bits - 8) : 1;
+    }
+}
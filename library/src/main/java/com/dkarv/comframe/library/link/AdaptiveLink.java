@@ -0,0 +1,587 @@
+package com.dkarv.comframe.library.link;
+
+import android.util.Log;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.ComFrameReceiver;
+import com.dkarv.comframe.library.ComFrameSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a half duplex link between two devices which switches to the fastest {@link RateProfile}
+ * the room allows.
+ * <p/>
+ * both sides start with the same base profile. {@link #negotiate()} probes the faster profiles,
+ * the fastest one first:
+ * <ol>
+ * <li>the initiator sends PROBE with the profile, the other side switches its receiver to it</li>
+ * <li>after the guard time the initiator sends a known pattern with the probed profile</li>
+ * <li>the other side counts the wrong bits, switches back and sends a REPORT</li>
+ * <li>if the error rate is acceptable the initiator sends SWITCH and both use the profile,
+ * otherwise the next slower one is probed</li>
+ * <li>the other side answers with SWITCH_ACK on the new profile. if that doesn't arrive, the
+ * SWITCH or the ack got lost, so the initiator sends FALLBACK on the new and on the old profile
+ * and returns to the base profile</li>
+ * </ol>
+ * if the receiver drops corrupt frames at a faster profile or {@link #fallback()} is called, the
+ * link sends FALLBACK and both sides return to the base profile. a lost FALLBACK is no problem
+ * as long as the application calls {@link #fallback()} if the other side doesn't answer any more.
+ * <p/>
+ * every message gets one byte which tells the data apart from the control messages. all
+ * listeners are called on the thread of the link.
+ */
+public class AdaptiveLink implements ComFrame.MessageListener {
+    /**
+     * creates the senders and receivers for the profiles. they must not be prepared, the link
+     * sets the profile and the listeners itself. old ones are closed once they aren't needed
+     * any more, so a custom sink or source has to survive {@link ComFrameSender#close()}.
+     * use a crc, otherwise corrupt frames can't be detected
+     */
+    public interface Factory {
+        public ComFrameSender createSender(RateProfile profile);
+
+        public ComFrameReceiver createReceiver(RateProfile profile);
+    }
+
+    /**
+     * notified whenever the link switched to another profile
+     */
+    public interface ProfileListener {
+        public void onProfileChanged(RateProfile profile);
+    }
+
+    private static final byte DATA = 0;
+    private static final byte PROBE = 1;
+    private static final byte PROBE_DATA = 2;
+    private static final byte REPORT = 3;
+    private static final byte SWITCH = 4;
+    private static final byte FALLBACK = 5;
+    private static final byte SWITCH_ACK = 6;
+
+    /**
+     * the pattern sent to measure the error rate, the same on every device
+     */
+    private static final byte[] PATTERN = new byte[32];
+
+    static {
+        new Random(0x5EED).nextBytes(PATTERN);
+    }
+
+    public boolean debug = false;
+
+    private final Factory factory;
+    private final RateProfile base;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+    private ComFrame.MessageListener msgListener;
+    private ProfileListener profileListener;
+    private double maxBitErrorRate = 0.001;
+    private long guardMillis = 500;
+    private long timeoutMillis = 3000;
+    private int fallbackCorruptFrames = 2;
+    private long autoNegotiateMillis = 0;
+    private int sampleRate = ComFrame.DFAULT_SAMPLE_RATE;
+
+    private volatile RateProfile profile;
+
+    // everything below is only used on the worker
+    private ComFrameSender sender;
+    private ComFrameReceiver receiver;
+    /**
+     * the profiles the initiator still has to probe
+     */
+    private final List<RateProfile> candidates = new ArrayList<RateProfile>();
+    /**
+     * the profile the initiator waits for a report of, null if it doesn't negotiate
+     */
+    private RateProfile probing;
+    /**
+     * the profile the other side listens on for the probe, null if it doesn't
+     */
+    private RateProfile listening;
+    /**
+     * the profile the initiator switched to and waits for the ack of, null if it doesn't
+     */
+    private RateProfile confirming;
+    private ScheduledFuture<?> timeout;
+    /**
+     * messages sent during a negotiation, they are sent once it's done
+     */
+    private final List<byte[]> pending = new ArrayList<byte[]>();
+    private int lastCorruptFrames = 0;
+
+    /**
+     * @param factory creates the senders and receivers
+     * @param base    the profile both sides start with and fall back to
+     */
+    public AdaptiveLink(Factory factory, RateProfile base) {
+        this.factory = factory;
+        this.base = base;
+        this.profile = base;
+    }
+
+    /**
+     * start listening, call this after all options are set
+     */
+    public void start() {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                sender = factory.createSender(profile);
+                profile.configure(sender, sampleRate);
+                receiver = openReceiver(profile);
+            }
+        });
+        worker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkCorruptFrames();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+        if (autoNegotiateMillis > 0) {
+            worker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    startNegotiation();
+                }
+            }, autoNegotiateMillis, autoNegotiateMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * send a message with the current profile. returns right away, the message is sent on the
+     * thread of the link, after a running negotiation
+     */
+    public void send(final byte[] data) {
+        final byte[] msg = new byte[data.length + 1];
+        msg[0] = DATA;
+        System.arraycopy(data, 0, msg, 1, data.length);
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (negotiating()) {
+                    pending.add(msg);
+                } else {
+                    transmit(sender, msg);
+                }
+            }
+        });
+    }
+
+    /**
+     * probe the profiles faster than the current one and switch to the fastest one that works.
+     * only one side should start negotiations
+     */
+    public void negotiate() {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                startNegotiation();
+            }
+        });
+    }
+
+    /**
+     * return to the base profile, for example if the other side stopped answering
+     */
+    public void fallback() {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                fallbackNow();
+            }
+        });
+    }
+
+    /**
+     * @return the profile currently used
+     */
+    public RateProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * stop the link and close the sender and the receiver. does nothing if it is closed already
+     */
+    public synchronized void close() {
+        if (worker.isShutdown()) {
+            return;
+        }
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (receiver != null) {
+                    receiver.close();
+                    receiver = null;
+                }
+                if (sender != null) {
+                    sender.close();
+                    sender = null;
+                }
+            }
+        });
+        worker.shutdown();
+        try {
+            worker.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * gets the data sent by the other side, without the byte of the link
+     */
+    public void setMsgListener(ComFrame.MessageListener msgListener) {
+        this.msgListener = msgListener;
+    }
+
+    public void setProfileListener(ProfileListener profileListener) {
+        this.profileListener = profileListener;
+    }
+
+    /**
+     * the highest error rate of a probe that is still acceptable, the default is 0.001.
+     * with a crc a probe either arrives without errors or not at all
+     */
+    public void setMaxBitErrorRate(double maxBitErrorRate) {
+        this.maxBitErrorRate = maxBitErrorRate;
+    }
+
+    /**
+     * how long the initiator waits until the other side switched its receiver, at least the
+     * latency of the speaker and the mic. the default is 500ms
+     */
+    public void setGuardTime(long millis) {
+        this.guardMillis = millis;
+    }
+
+    /**
+     * how long to wait for a probe or a report, the default is 3s
+     */
+    public void setTimeout(long millis) {
+        this.timeoutMillis = millis;
+    }
+
+    /**
+     * fall back once the receiver dropped this many corrupt frames within a second,
+     * the default is 2
+     */
+    public void setFallbackCorruptFrames(int count) {
+        this.fallbackCorruptFrames = count;
+    }
+
+    /**
+     * negotiate every millis on our own, 0 to only negotiate on {@link #negotiate()}. set it on
+     * one side only. has to be set before {@link #start()}
+     */
+    public void setAutoNegotiateInterval(long millis) {
+        this.autoNegotiateMillis = millis;
+    }
+
+    /**
+     * the sample rate of the senders and receivers, the profiles choose their carriers for it.
+     * set the same on both sides, before {@link #start()}. the default is
+     * {@link ComFrame#DFAULT_SAMPLE_RATE}
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void onMessageReceived(byte[] msg) {
+        // called on the worker, see openReceiver()
+        if (msg.length == 0) {
+            return;
+        }
+        switch (msg[0]) {
+            case DATA:
+                if (msgListener != null) {
+                    byte[] data = new byte[msg.length - 1];
+                    System.arraycopy(msg, 1, data, 0, data.length);
+                    msgListener.onMessageReceived(data);
+                }
+                break;
+            case PROBE:
+                RateProfile p = toProfile(msg, 1);
+                if (p != null && p != profile && !negotiating()) {
+                    listenForProbe(p);
+                }
+                break;
+            case PROBE_DATA:
+                if (listening != null) {
+                    finishProbe(countBitErrors(msg), PATTERN.length * 8);
+                }
+                break;
+            case REPORT:
+                if (msg.length >= 6 && probing != null && toProfile(msg, 1) == probing) {
+                    onReport((msg[2] & 0xFF) << 8 | msg[3] & 0xFF,
+                            (msg[4] & 0xFF) << 8 | msg[5] & 0xFF);
+                }
+                break;
+            case SWITCH:
+                RateProfile s = toProfile(msg, 1);
+                if (s != null) {
+                    switchTo(s);
+                    acknowledgeSwitch(s);
+                }
+                break;
+            case SWITCH_ACK:
+                if (confirming != null && toProfile(msg, 1) == confirming) {
+                    timeout.cancel(false);
+                    confirming = null;
+                    sendPending();
+                }
+                break;
+            case FALLBACK:
+                switchTo(base);
+                break;
+            default:
+                if (debug) {
+                    Log.d("AdaptiveLink", "unknown message type " + msg[0]);
+                }
+        }
+    }
+
+    private boolean negotiating() {
+        return probing != null || listening != null || confirming != null;
+    }
+
+    private void startNegotiation() {
+        if (sender == null || negotiating()) {
+            return;
+        }
+        candidates.clear();
+        RateProfile[] profiles = RateProfile.values();
+        for (int i = profiles.length - 1; i >= 0; i--) {
+            if (profiles[i].isFasterThan(profile)) {
+                candidates.add(profiles[i]);
+            }
+        }
+        probeNext();
+    }
+
+    private void probeNext() {
+        if (candidates.isEmpty()) {
+            probing = null;
+            sendPending();
+            return;
+        }
+        final RateProfile p = candidates.remove(0);
+        probing = p;
+        if (debug) {
+            Log.d("AdaptiveLink", "probe " + p);
+        }
+        transmit(sender, new byte[]{PROBE, (byte) p.ordinal()});
+        timeout = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendProbe(p);
+            }
+        }, guardMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendProbe(final RateProfile p) {
+        if (probing != p) {
+            return;
+        }
+        byte[] msg = new byte[PATTERN.length + 1];
+        msg[0] = PROBE_DATA;
+        System.arraycopy(PATTERN, 0, msg, 1, PATTERN.length);
+        transmitWith(p, msg);
+        timeout = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (probing == p) {
+                    if (debug) {
+                        Log.d("AdaptiveLink", "no report for " + p);
+                    }
+                    probeNext();
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void onReport(int errors, int bits) {
+        timeout.cancel(false);
+        if (debug) {
+            Log.d("AdaptiveLink", probing + ": " + errors + " of " + bits + " bits wrong");
+        }
+        if (bits > 0 && errors <= maxBitErrorRate * bits) {
+            final RateProfile p = probing;
+            final RateProfile old = profile;
+            probing = null;
+            candidates.clear();
+            transmit(sender, new byte[]{SWITCH, (byte) p.ordinal()});
+            switchTo(p);
+            // nothing more is sent until the other side confirmed it switched too
+            confirming = p;
+            timeout = worker.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (confirming == p) {
+                        if (debug) {
+                            Log.d("AdaptiveLink", "no ack for " + p);
+                        }
+                        confirming = null;
+                        // the other side is on p if only the ack got lost, on old if the SWITCH
+                        // got lost. tell it on both, then we meet on the base profile
+                        fallbackNow();
+                        if (old != base) {
+                            transmitWith(old, new byte[]{FALLBACK});
+                        }
+                        sendPending();
+                    }
+                }
+            }, guardMillis + timeoutMillis, TimeUnit.MILLISECONDS);
+        } else {
+            probeNext();
+        }
+    }
+
+    private void acknowledgeSwitch(final RateProfile p) {
+        // the initiator switches its receiver right after the SWITCH, give it the guard time
+        worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (profile == p && sender != null) {
+                    transmit(sender, new byte[]{SWITCH_ACK, (byte) p.ordinal()});
+                }
+            }
+        }, guardMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void listenForProbe(final RateProfile p) {
+        listening = p;
+        receiver.close();
+        receiver = openReceiver(p);
+        timeout = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (listening == p) {
+                    // nothing arrived
+                    finishProbe(0, 0);
+                }
+            }
+        }, guardMillis + timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void finishProbe(int errors, int bits) {
+        timeout.cancel(false);
+        RateProfile p = listening;
+        listening = null;
+        receiver.close();
+        receiver = openReceiver(profile);
+        transmit(sender, new byte[]{REPORT, (byte) p.ordinal(), (byte) (errors >> 8),
+                (byte) errors, (byte) (bits >> 8), (byte) bits});
+        sendPending();
+    }
+
+    private void fallbackNow() {
+        if (sender == null || profile == base) {
+            return;
+        }
+        // the other side might still hear us
+        transmit(sender, new byte[]{FALLBACK});
+        switchTo(base);
+    }
+
+    private void checkCorruptFrames() {
+        if (receiver == null || listening != null) {
+            return;
+        }
+        int corrupt = receiver.getCorruptFrameCount();
+        if (corrupt - lastCorruptFrames >= fallbackCorruptFrames) {
+            if (debug) {
+                Log.d("AdaptiveLink", (corrupt - lastCorruptFrames) + " corrupt frames");
+            }
+            fallbackNow();
+        }
+        lastCorruptFrames = receiver != null ? receiver.getCorruptFrameCount() : 0;
+    }
+
+    private void switchTo(RateProfile p) {
+        if (p == profile) {
+            return;
+        }
+        if (debug) {
+            Log.d("AdaptiveLink", "switch to " + p);
+        }
+        profile = p;
+        sender.close();
+        sender = factory.createSender(p);
+        p.configure(sender, sampleRate);
+        receiver.close();
+        receiver = openReceiver(p);
+        if (profileListener != null) {
+            profileListener.onProfileChanged(p);
+        }
+    }
+
+    private ComFrameReceiver openReceiver(RateProfile p) {
+        ComFrameReceiver r = factory.createReceiver(p);
+        p.configure(r, sampleRate);
+        r.setMsgListener(this);
+        r.setListenerExecutor(worker);
+        r.startListening();
+        lastCorruptFrames = 0;
+        return r;
+    }
+
+    /**
+     * sends msg while our own receiver doesn't listen, it would hear us too
+     */
+    private void transmit(ComFrameSender s, byte[] msg) {
+        receiver.stopListening();
+        try {
+            s.send(msg);
+        } finally {
+            receiver.startListening();
+        }
+    }
+
+    /**
+     * sends msg with a sender of another profile than the current one
+     */
+    private void transmitWith(RateProfile p, byte[] msg) {
+        ComFrameSender s = factory.createSender(p);
+        p.configure(s, sampleRate);
+        try {
+            transmit(s, msg);
+        } finally {
+            s.close();
+        }
+    }
+
+    private void sendPending() {
+        for (int i = 0; i < pending.size(); i++) {
+            transmit(sender, pending.get(i));
+        }
+        pending.clear();
+    }
+
+    private static RateProfile toProfile(byte[] msg, int index) {
+        RateProfile[] profiles = RateProfile.values();
+        if (msg.length <= index || msg[index] < 0 || msg[index] >= profiles.length) {
+            return null;
+        }
+        return profiles[msg[index]];
+    }
+
+    /**
+     * @return how many bits of the pattern in msg are wrong, missing ones count as wrong
+     */
+    private static int countBitErrors(byte[] msg) {
+        int errors = 0;
+        for (int i = 0; i < PATTERN.length; i++) {
+            errors += i + 1 < msg.length ? Integer.bitCount((msg[i + 1] ^ PATTERN[i]) & 0xFF) : 8;
+        }
+        return errors;
+    }
+}
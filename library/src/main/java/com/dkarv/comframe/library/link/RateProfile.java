@@ -0,0 +1,77 @@
+package com.dkarv.comframe.library.link;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.ComFrameReceiver;
+import com.dkarv.comframe.library.ComFrameSender;
+import com.dkarv.comframe.library.tools.CarrierPlanner;
+import com.dkarv.comframe.library.tools.FFT;
+
+/**
+ * the symbol lengths a link can use, from the slowest and most robust one to the fastest one.
+ * the carrier of every profile is the frequency next to {@link ComFrame#DEFAULT_FREQUENCY} that
+ * hits an fft bin of its symbol length exactly, chosen by a {@link CarrierPlanner} for the
+ * sample rate in use.
+ * <p/>
+ * halving the symbol doubles the bit rate, but every symbol gets half the energy and echoes of
+ * the room smear over a bigger part of it.
+ */
+public enum RateProfile {
+    SYMBOL_512(512),
+    SYMBOL_256(ComFrame.DEFAULT_FFT_SIZE),
+    SYMBOL_128(128),
+    SYMBOL_64(64);
+
+    private final int fftSize;
+
+    private RateProfile(int fftSize) {
+        this.fftSize = fftSize;
+    }
+
+    /**
+     * @return the samples per symbol, the bufferSize of the sender and receiver
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * @return the frequency of the first carrier at sampleRate, below half the sampleRate
+     */
+    public int getFrequency(int sampleRate) {
+        int bin = Math.min(FFT.getFFTBin(ComFrame.DEFAULT_FREQUENCY, fftSize, sampleRate),
+                fftSize / 2 - 1);
+        return CarrierPlanner.get(fftSize, sampleRate).getBestCarrier(bin).frequency;
+    }
+
+    /**
+     * @return the symbols sent per second on every carrier
+     */
+    public double getSymbolRate(int sampleRate) {
+        return sampleRate / (double) fftSize;
+    }
+
+    /**
+     * @return if this profile sends more symbols per second than other
+     */
+    public boolean isFasterThan(RateProfile other) {
+        return fftSize < other.fftSize;
+    }
+
+    /**
+     * set the bufferSize, sampleRate and frequency of a sender that wasn't prepared yet
+     */
+    public void configure(ComFrameSender sender, int sampleRate) {
+        sender.setBufferSize(fftSize);
+        sender.setSampleRate(sampleRate);
+        sender.setFrequency(getFrequency(sampleRate));
+    }
+
+    /**
+     * set the bufferSize, sampleRate and frequency of a receiver that wasn't prepared yet
+     */
+    public void configure(ComFrameReceiver receiver, int sampleRate) {
+        receiver.setBufferSize(fftSize);
+        receiver.setSampleRate(sampleRate);
+        receiver.setFrequency(getFrequency(sampleRate));
+    }
+}
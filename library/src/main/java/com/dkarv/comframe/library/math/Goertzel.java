@@ -1,15 +1,42 @@
 package com.dkarv.comframe.library.math;
 
-
+/**
+ * computes a single bin of the dft. keeps no state between two windows, so one instance can be
+ * shared, see {@link com.dkarv.comframe.library.tools.CarrierPlanner#getGoertzel(int)}
+ */
 public class Goertzel {
-    private int n;
-    private double realW;
-    private double imagW;
+    /**
+     * fractional bits of {@link #realWFixed}
+     */
+    private static final int FIXED_POINT_BITS = 28;
+    /**
+     * maximum fractional bits of the state in {@link #goertzel(short[], double[])}
+     */
+    private static final int MAX_STATE_BITS = 8;
+    private final int n;
+    private final double realW;
+    private final double imagW;
+    /**
+     * realW as fixed point number for {@link #goertzel(short[], double[])}
+     */
+    private final long realWFixed;
+    /**
+     * fractional bits of the state in {@link #goertzel(short[], double[])}, as many as possible
+     * without overflowing the product with realWFixed
+     */
+    private final int stateBits;
 
     public Goertzel(int n, int bin) {
         this.n = n;
         realW = 2.0 * Math.cos(2.0 * Math.PI * bin / n);
         imagW = Math.sin(2.0 * Math.PI * bin / n);
+        realWFixed = Math.round(realW * (1L << FIXED_POINT_BITS));
+
+        // the state stays below n * 2^15 / |sin(2 * PI * bin / n)|, realWFixed below 2^29
+        double maxState = n * 32768.0 / Math.max(Math.abs(imagW), 1e-9);
+        int stateHeadroom = 62 - (FIXED_POINT_BITS + 1) -
+                (int) Math.ceil(Math.log(maxState) / Math.log(2));
+        stateBits = Math.max(0, Math.min(MAX_STATE_BITS, stateHeadroom));
     }
 
     /**
@@ -28,15 +55,59 @@ public class Goertzel {
         out[1] = imagW * d1;
     }
 
+    /**
+     * @param in    circular buffer, the window may wrap around its end
+     * @param start first sample of the window in in
+     * @param out   length=2, [0] is real part, [1] is imaginary part
+     */
     public void goertzel(double[] in, int start, double[] out) {
         double d1 = 0.0;
         double d2 = 0.0;
-        for (int i = 0; i < n; i++) {
-            double y = in[(i + start) % in.length] + realW * d1 - d2;
+        // split the loop at the end of the buffer instead of taking the modulo for every sample
+        int pos = start % in.length;
+        int first = Math.min(n, in.length - pos);
+        for (int i = pos; i < pos + first; i++) {
+            double y = in[i] + realW * d1 - d2;
+            d2 = d1;
+            d1 = y;
+        }
+        for (int i = 0; i < n - first; i++) {
+            double y = in[i] + realW * d1 - d2;
             d2 = d1;
             d1 = y;
         }
         out[0] = 0.5 * realW * d1 - d2;
         out[1] = imagW * d1;
     }
+
+    /**
+     * the same as {@link #goertzel(double[], double[])} with {@code in[i] / Short.MAX_VALUE} as
+     * input, but works directly on the raw samples from the mic. the recurrence runs in fixed point
+     * arithmetic, which is a lot cheaper than double on devices without a fpu and saves the
+     * conversion of the whole window to double.
+     *
+     * @param in  raw buffer from the mic
+     * @param out length=2, [0] is real part, [1] is imaginary part
+     */
+    public void goertzel(short[] in, double[] out) {
+        goertzel(in, 0, out);
+    }
+
+    /**
+     * the same as {@link #goertzel(short[], double[])} for the window starting at start
+     */
+    public void goertzel(short[] in, int start, double[] out) {
+        final int shift = stateBits;
+        final long round = 1L << (FIXED_POINT_BITS - 1);
+        long d1 = 0;
+        long d2 = 0;
+        for (int i = start; i < start + n; i++) {
+            long y = ((long) in[i] << shift) + ((realWFixed * d1 + round) >> FIXED_POINT_BITS) - d2;
+            d2 = d1;
+            d1 = y;
+        }
+        final double scale = 1.0 / ((double) Short.MAX_VALUE * (1L << shift));
+        out[0] = (0.5 * realW * d1 - d2) * scale;
+        out[1] = imagW * d1 * scale;
+    }
 }
@@ -0,0 +1,62 @@
+package com.dkarv.comframe.library.math;
+
+/**
+ * computes a single bin of the DFT like {@link Goertzel}, but for every possible start of the
+ * window. once the first window was computed, moving the window by one sample only costs O(1):
+ * <p/>
+ * {@code X(t + 1) = e^(j * 2 * PI * bin / n) * (X(t) - x[t] + x[t + n])}
+ * <p/>
+ * the values are exactly the ones {@link Goertzel} computes for the same window, [0] is the real
+ * part, [1] is the imaginary part. the rounding error grows with every slide, but stays far below
+ * anything that matters for a few thousand samples. call {@link #init(double[], int)} again to get
+ * rid of it.
+ */
+public class SlidingDFT {
+    private final int n;
+    private final double cosW;
+    private final double sinW;
+    private final Goertzel goertzel;
+    private final double[] out = new double[2];
+    private double real;
+    private double imag;
+
+    public SlidingDFT(int n, int bin) {
+        this.n = n;
+        cosW = Math.cos(2.0 * Math.PI * bin / n);
+        sinW = Math.sin(2.0 * Math.PI * bin / n);
+        goertzel = new Goertzel(n, bin);
+    }
+
+    /**
+     * computes the window starting at start from scratch
+     *
+     * @param in    circular buffer, the window wraps around the end of it
+     * @param start first sample of the window
+     */
+    public void init(double[] in, int start) {
+        goertzel.goertzel(in, start, out);
+        real = out[0];
+        imag = out[1];
+    }
+
+    /**
+     * moves the window one sample further
+     *
+     * @param oldest the first sample of the current window, which drops out
+     * @param newest the sample after the current window, which comes in
+     */
+    public void slide(double oldest, double newest) {
+        double r = real - oldest + newest;
+        double i = imag;
+        real = r * cosW - i * sinW;
+        imag = r * sinW + i * cosW;
+    }
+
+    /**
+     * @param out length=2, [0] is real part, [1] is imaginary part of the current window
+     */
+    public void get(double[] out) {
+        out[0] = real;
+        out[1] = imag;
+    }
+}
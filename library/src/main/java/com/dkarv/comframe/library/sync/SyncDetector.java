@@ -0,0 +1,290 @@
+package com.dkarv.comframe.library.sync;
+
+import com.dkarv.comframe.library.math.Goertzel;
+import com.dkarv.comframe.library.math.SlidingDFT;
+
+/**
+ * finds a {@link SyncWord} in the recorded sound, at full sample resolution.
+ * <p/>
+ * a {@link SlidingDFT} computes the carrier bin of the window starting at every sample, from each
+ * one to the window a whole window later we get a phase difference as the product
+ * {@code cur * conj(prev)}. the phase differences of a sync word lie one window apart, so the
+ * correlation with the word at a sample is the sum of the word.length() phase differences before
+ * it, each one turned around if its bit is a 0. the sum points towards the phase shift of a 1 if
+ * a sync word ends there. its length divided by the power of the windows is the score: 1 if every
+ * phase difference fits perfectly and the carrier keeps its strength, about 1 / sqrt(length) for
+ * noise.
+ * <p/>
+ * the bins are computed only once when the samples come in, the correlation costs at most
+ * word.length() additions per sample but gives up as soon as the threshold can't be reached any
+ * more. a sync word is found at the sample with the best score above the
+ * {@link SyncWord#getThreshold()}, as soon as the score doesn't get better any more.
+ * <p/>
+ * if the sender's carrier is a bit off, all phase differences are turned by about the same
+ * angle. the correlation keeps its length then, the angle is accepted up to
+ * {@link #MAX_CARRIER_ROTATION}.
+ */
+public class SyncDetector {
+    /**
+     * how strong the carrier bin has to be at least on average
+     */
+    private static final double MAGNITUDE_THRESHOLD = 0.03;
+    /**
+     * how much further or less the carrier may turn per window than phaseOffset says
+     */
+    private static final double MAX_CARRIER_ROTATION = 0.6;
+    private static final double TAN_MAX_CARRIER_ROTATION = Math.tan(MAX_CARRIER_ROTATION);
+
+    private final int fftSize;
+    private final int length;
+    /**
+     * 1 for every 1 of the word, -1 for every 0. [0] is the last bit
+     */
+    private final double[] pattern;
+    private final double threshold;
+    /**
+     * the phaseOffset, see {@link com.dkarv.comframe.library.tools.FFT#getPhaseOffset(int, int,
+     * int)}
+     */
+    private final double cosOffset;
+    private final double sinOffset;
+    /**
+     * the smallest sum of the powers of the windows we look at
+     */
+    private final double minPower;
+    private final SlidingDFT slidingDFT;
+    private final double[] out = new double[2];
+    /**
+     * the last windows, translated to double. a ring buffer of whole windows, so every window
+     * we got starts at a multiple of fftSize
+     */
+    private final double[] samples;
+    /**
+     * the bin of the window starting at every sample of the last window, indexed by the sample
+     * modulo fftSize
+     */
+    private final double[] binReal;
+    private final double[] binImag;
+    private final double[] binPower;
+    /**
+     * the sum of the diffPower of every sample of the newest window
+     */
+    private final double[] powerSums;
+    /**
+     * the phase difference to the window before, of the window starting at every sample in
+     * samples. not turned by the phaseOffset yet
+     */
+    private final double[] diffReal;
+    private final double[] diffImag;
+    /**
+     * the mean power of the two windows of every phase difference, at least its length
+     */
+    private final double[] diffPower;
+    /**
+     * where the newest window starts in samples
+     */
+    private int head = 0;
+    /**
+     * how many windows we got since the last reset, stops counting once the correlation works
+     */
+    private int windows = 0;
+    /**
+     * where the last window of the best sync word found so far starts in samples, -1 if none
+     */
+    private int candidate = -1;
+    private double candidateScore;
+    private int found = -1;
+    private double score;
+
+    /**
+     * @param bin         the bin of the carrier the sync word is searched on
+     * @param phaseOffset how far the carrier turns from one window to the next
+     */
+    public SyncDetector(int fftSize, int bin, double phaseOffset, SyncWord word) {
+        this.fftSize = fftSize;
+        length = word.length();
+        pattern = new double[length];
+        for (int j = 0; j < length; j++) {
+            pattern[j] = word.getBit(length - 1 - j) ? 1 : -1;
+        }
+        threshold = word.getThreshold();
+        cosOffset = Math.cos(phaseOffset);
+        sinOffset = Math.sin(phaseOffset);
+        minPower = length * MAGNITUDE_THRESHOLD * MAGNITUDE_THRESHOLD;
+        slidingDFT = new SlidingDFT(fftSize, bin);
+
+        // the word, its reference window, the window after it and one more because the word
+        // doesn't start at the beginning of a window. at least the last four windows, see
+        // copySamples
+        int size = Math.max(length + 3, 4) * fftSize;
+        samples = new double[size];
+        binReal = new double[fftSize];
+        binImag = new double[fftSize];
+        binPower = new double[fftSize];
+        powerSums = new double[fftSize];
+        diffReal = new double[size];
+        diffImag = new double[size];
+        diffPower = new double[size];
+    }
+
+    /**
+     * takes the next window of the recording and searches the sync word in it
+     *
+     * @param buffer fftSize samples recorded after the ones of the last call
+     * @return -1 if no sync word was found, otherwise how many samples before the beginning of
+     * buffer the first window after the sync word starts: 0 ... fftSize - 1
+     */
+    public int detect(short[] buffer) {
+        final int n = fftSize;
+        final int size = samples.length;
+        int last = head;
+        head = (head + n) % size;
+        for (int i = 0; i < n; i++) {
+            samples[head + i] = (double) buffer[i] / Short.MAX_VALUE;
+        }
+        if (windows < length + 2) {
+            windows++;
+        }
+        if (windows < 2) {
+            return -1;
+        }
+
+        // the windows starting at last + 1 ... head are complete now
+        int first = last + 1;
+        slidingDFT.init(samples, last);
+        for (int i = 0; i < n; i++) {
+            slidingDFT.slide(samples[last + i], samples[head + i]);
+            slidingDFT.get(out);
+            int pos = first + i == size ? 0 : first + i;
+            int k = (i + 1) % n;
+            double power = out[0] * out[0] + out[1] * out[1];
+            // cur * conj(prev)
+            diffReal[pos] = out[0] * binReal[k] + out[1] * binImag[k];
+            diffImag[pos] = out[1] * binReal[k] - out[0] * binImag[k];
+            diffPower[pos] = 0.5 * (power + binPower[k]);
+            binReal[k] = out[0];
+            binImag[k] = out[1];
+            binPower[k] = power;
+        }
+        if (windows <= length + 1) {
+            return -1;
+        }
+
+        // the powers of a whole window of samples at once, that's a lot faster than jumping
+        // through diffPower for every single one
+        for (int i = 0; i < n; i++) {
+            powerSums[i] = 0;
+        }
+        for (int j = 0; j < length; j++) {
+            int pos = first - j * n;
+            if (pos < 0) {
+                pos += size;
+            }
+            for (int i = 0; i < n; i++, pos++) {
+                powerSums[i] += diffPower[pos == size ? 0 : pos];
+            }
+        }
+
+        int best = -1;
+        double bestScore = 0;
+        for (int i = 0; i < n; i++) {
+            double sumPower = powerSums[i];
+            if (sumPower < minPower) {
+                continue;
+            }
+            // every phase difference makes the sum at most as long as its power, so most
+            // samples are given up after a few phase differences
+            double sumReal = 0;
+            double sumImag = 0;
+            double missing = threshold * sumPower - sumPower;
+            int pos = first + i == size ? 0 : first + i;
+            int j = 0;
+            for (int p = pos; j < length; j++) {
+                sumReal += pattern[j] * diffReal[p];
+                sumImag += pattern[j] * diffImag[p];
+                missing += diffPower[p];
+                if (missing > 0 && sumReal * sumReal + sumImag * sumImag < missing * missing) {
+                    break;
+                }
+                p -= n;
+                if (p < 0) {
+                    p += size;
+                }
+            }
+            if (j < length) {
+                continue;
+            }
+            // rotate by -phaseOffset, the phase shift of a 1 is now on the positive imaginary
+            // axis
+            double shiftedRe = sumReal * cosOffset + sumImag * sinOffset;
+            double shiftedIm = sumImag * cosOffset - sumReal * sinOffset;
+            if (shiftedIm <= 0 || Math.abs(shiftedRe) > TAN_MAX_CARRIER_ROTATION * shiftedIm) {
+                continue;
+            }
+            double match = Math.sqrt(shiftedRe * shiftedRe + shiftedIm * shiftedIm) / sumPower;
+            if (match >= threshold && match > bestScore) {
+                best = pos;
+                bestScore = match;
+            }
+        }
+
+        if (best >= 0 && (candidate < 0 || bestScore > candidateScore)) {
+            // the score might get even better in the next window
+            candidate = best;
+            candidateScore = bestScore;
+            return -1;
+        }
+        if (candidate < 0) {
+            return -1;
+        }
+        found = candidate;
+        score = candidateScore;
+        candidate = -1;
+        // the first window after the word starts a window after the last one of the word
+        int delay = head - found - n;
+        return delay < 0 ? delay + size : delay;
+    }
+
+    /**
+     * @return how well the sync word found last correlated, between the threshold and 1
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * computes another bin of a window of the sync word found last
+     *
+     * @param window 0 is the reference window before the first bit, {@link SyncWord#length()}
+     *               the window of the last bit
+     * @param out    see {@link Goertzel#goertzel(double[], int, double[])}
+     */
+    public void goertzel(Goertzel goertzel, int window, double[] out) {
+        int start = found - (length - window) * fftSize;
+        goertzel.goertzel(samples, start < 0 ? start + samples.length : start, out);
+    }
+
+    /**
+     * @param out filled with the newest out.length samples, at most 4 * fftSize
+     */
+    public void copySamples(short[] out) {
+        int pos = head + fftSize - out.length;
+        if (pos < 0) {
+            pos += samples.length;
+        }
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (short) Math.round(samples[pos] * Short.MAX_VALUE);
+            if (++pos == samples.length) {
+                pos = 0;
+            }
+        }
+    }
+
+    /**
+     * forget all windows, the next sync word has to come completely after this call
+     */
+    public void reset() {
+        windows = 0;
+        candidate = -1;
+    }
+}
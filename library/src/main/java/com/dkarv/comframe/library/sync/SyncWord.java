@@ -0,0 +1,68 @@
+package com.dkarv.comframe.library.sync;
+
+import com.dkarv.comframe.library.ComFrameSender;
+import com.dkarv.comframe.library.tools.Bit;
+
+/**
+ * the bits sent before every frame so the receiver finds its start, see {@link SyncDetector}.
+ * they are sent with DBPSK on all carriers after one window that only serves as the reference
+ * for the first phase difference.
+ * <p/>
+ * a longer word needs more time on air, but the receiver finds it at a worse snr and still
+ * finds it with a few wrong bits. all words have a low autocorrelation, so they don't match
+ * shifted by a few windows.
+ * important: set the same word on the sender and the receiver
+ */
+public enum SyncWord {
+    /**
+     * the 8 bits of {@link ComFrameSender#PRE}, the one versions before the sync words were
+     * introduced send
+     */
+    PRE(toBits(ComFrameSender.PRE), 0.95),
+    /**
+     * the barker code of length 13
+     */
+    BARKER_13("1111100110101", 0.85),
+    /**
+     * the maximum length sequence of x^5 + x^3 + 1
+     */
+    M_SEQUENCE_31("1111100011011101010000100101100", 0.7);
+
+    private final boolean[] bits;
+    private final double threshold;
+
+    private SyncWord(String bits, double threshold) {
+        this.bits = new boolean[bits.length()];
+        for (int i = 0; i < this.bits.length; i++) {
+            this.bits[i] = bits.charAt(i) == '1';
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return how many bits the word has, it needs one window more on air
+     */
+    public int length() {
+        return bits.length;
+    }
+
+    public boolean getBit(int i) {
+        return bits[i];
+    }
+
+    /**
+     * @return how well the received phase differences have to correlate with the word at least,
+     * between 0 and 1. chosen such that white noise exceeds it less than once in 10^6 windows
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    private static String toBits(byte b) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            s.append(Bit.getBit(b, i) ? '1' : '0');
+        }
+        return s.toString();
+    }
+}
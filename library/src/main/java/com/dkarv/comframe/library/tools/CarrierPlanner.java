@@ -0,0 +1,189 @@
+package com.dkarv.comframe.library.tools;
+
+import com.dkarv.comframe.library.math.Goertzel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * helps choosing the frequencies to send on for a fftSize and sampleRate.
+ * <p/>
+ * a carrier only ends up completely in its fft bin if it makes a whole number of periods in one
+ * window, see {@link com.dkarv.comframe.library.ComFrame#DEFAULT_FREQUENCY}. otherwise a part of
+ * its energy leaks into the other bins: it is missing in its own bin and disturbs the neighbouring
+ * carriers. the phase drift can be compensated with {@link FFT#getPhaseOffset(int, int, int)},
+ * the leakage can't.
+ * <p/>
+ * the planners are cached, as well as the {@link Goertzel}s they create.
+ */
+public class CarrierPlanner {
+    /**
+     * one possible carrier
+     */
+    public static class Carrier implements Comparable<Carrier> {
+        public final int frequency;
+        /**
+         * the fft bin the frequency is received in
+         */
+        public final int bin;
+        /**
+         * how far the frequency is off the center of its bin, in bins: -0.5 ... 0.5
+         */
+        public final double binOffset;
+        /**
+         * the part of the energy that doesn't end up in bin, 0 if the carrier hits its bin
+         * exactly
+         */
+        public final double leakage;
+
+        private Carrier(int frequency, int bin, double binOffset) {
+            this.frequency = frequency;
+            this.bin = bin;
+            this.binOffset = binOffset;
+            this.leakage = leakage(binOffset);
+        }
+
+        /**
+         * the carrier with less leakage first, the lower frequency if both leak the same
+         */
+        @Override
+        public int compareTo(Carrier other) {
+            int c = Double.compare(leakage, other.leakage);
+            return c != 0 ? c : frequency - other.frequency;
+        }
+
+        @Override
+        public String toString() {
+            return frequency + "Hz (bin " + bin + ", leakage " + leakage + ")";
+        }
+    }
+
+    private static final Map<Long, CarrierPlanner> planners = new HashMap<Long, CarrierPlanner>();
+
+    /**
+     * @return the planner for fftSize and sampleRate, created only once
+     */
+    public static synchronized CarrierPlanner get(int fftSize, int sampleRate) {
+        Long key = (long) fftSize << 32 | sampleRate;
+        CarrierPlanner planner = planners.get(key);
+        if (planner == null) {
+            planner = new CarrierPlanner(fftSize, sampleRate);
+            planners.put(key, planner);
+        }
+        return planner;
+    }
+
+    private final int fftSize;
+    private final int sampleRate;
+    /**
+     * indexed by the bin, created when they are needed the first time
+     */
+    private final Goertzel[] goertzels;
+
+    private CarrierPlanner(int fftSize, int sampleRate) {
+        if (fftSize < 4 || sampleRate < 1) {
+            throw new IllegalArgumentException("invalid fftSize " + fftSize + " or sampleRate " +
+                    sampleRate);
+        }
+        this.fftSize = fftSize;
+        this.sampleRate = sampleRate;
+        goertzels = new Goertzel[fftSize / 2 + 1];
+    }
+
+    /**
+     * @return how good frequency fits to the fftSize and sampleRate
+     */
+    public Carrier getCarrier(int frequency) {
+        double exact = fftSize * (frequency / (double) sampleRate);
+        int bin = (int) Math.round(exact);
+        return new Carrier(frequency, bin, exact - bin);
+    }
+
+    /**
+     * @return the frequency that hits bin as exactly as possible
+     */
+    public Carrier getBestCarrier(int bin) {
+        return getCarrier((int) Math.round(bin * (double) sampleRate / fftSize));
+    }
+
+    /**
+     * @return the best frequency of every bin between minFrequency and maxFrequency, the ones
+     * with the least leakage first
+     */
+    public List<Carrier> getCarriers(int minFrequency, int maxFrequency) {
+        List<Carrier> carriers = new ArrayList<Carrier>();
+        for (int bin = 1; bin < fftSize / 2; bin++) {
+            Carrier c = getBestCarrier(bin);
+            if (c.frequency >= minFrequency && c.frequency <= maxFrequency) {
+                carriers.add(c);
+            }
+        }
+        Collections.sort(carriers);
+        return carriers;
+    }
+
+    /**
+     * choose the frequency to set on the sender and receiver when sending on count carriers,
+     * which are placed by {@link FFT#getCarrierFrequencies(int, int, int, int)}. all of them lie
+     * between minFrequency and maxFrequency and the one that leaks most leaks as little as
+     * possible.
+     *
+     * @return the frequency of the first carrier
+     * @throws IllegalArgumentException if count carriers don't fit between minFrequency and
+     *                                  maxFrequency
+     */
+    public int getBestFrequency(int minFrequency, int maxFrequency, int count) {
+        int best = -1;
+        double bestLeakage = Double.MAX_VALUE;
+        int lastBin = fftSize / 2 - 1 - (count - 1) * FFT.CARRIER_SPACING;
+        for (int bin = 1; bin <= lastBin; bin++) {
+            int frequency = getBestCarrier(bin).frequency;
+            if (frequency < minFrequency) {
+                continue;
+            }
+            int[] frequencies = FFT.getCarrierFrequencies(frequency, count, fftSize, sampleRate);
+            if (frequencies[count - 1] > maxFrequency) {
+                break;
+            }
+            double worst = 0;
+            for (int i = 0; i < count; i++) {
+                worst = Math.max(worst, getCarrier(frequencies[i]).leakage);
+            }
+            if (worst < bestLeakage) {
+                bestLeakage = worst;
+                best = frequency;
+            }
+        }
+        if (best < 0) {
+            throw new IllegalArgumentException("can't fit " + count + " carriers between " +
+                    minFrequency + "Hz and " + maxFrequency + "Hz!");
+        }
+        return best;
+    }
+
+    /**
+     * @return a Goertzel for bin, the same instance for every call
+     */
+    public synchronized Goertzel getGoertzel(int bin) {
+        if (goertzels[bin] == null) {
+            goertzels[bin] = new Goertzel(fftSize, bin);
+        }
+        return goertzels[bin];
+    }
+
+    /**
+     * the energy of a tone binOffset bins off the center that is outside of its bin, for a
+     * rectangular window: 1 - sinc^2(binOffset)
+     */
+    private static double leakage(double binOffset) {
+        if (binOffset == 0) {
+            return 0;
+        }
+        double x = Math.PI * binOffset;
+        double sinc = Math.sin(x) / x;
+        return 1 - sinc * sinc;
+    }
+}
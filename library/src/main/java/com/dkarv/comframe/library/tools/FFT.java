@@ -7,6 +7,13 @@ public class FFT {
     public static double TWO_PI = Math.PI * 2;
     public static double HALF_PI = Math.PI / 2;
 
+    /**
+     * the distance between two carriers in fft bins when sending on several carriers at once.
+     * neighbouring bins would be orthogonal too, but one free bin between them leaves some space
+     * for leakage if the receiver isn't perfectly aligned
+     */
+    public static final int CARRIER_SPACING = 2;
+
     /**
      * calculates in which fft bin the values for the corresponding function is,
      * given the other parameters
@@ -43,4 +50,34 @@ public class FFT {
 
         return partOfLastPhaseInThisArray * TWO_PI;
     }
+
+    /**
+     * calculates the frequencies to send on when using several carriers at once. the first one is
+     * frequency itself, every further one is {@link #CARRIER_SPACING} fft bins higher and is
+     * chosen such that it hits its fft bin as exactly as possible.
+     *
+     * @param frequency  the first carrier
+     * @param count      how many carriers
+     * @param fftSize
+     * @param sampleRate
+     * @return the frequencies of all carriers
+     */
+    public static int[] getCarrierFrequencies(int frequency, int count, int fftSize,
+                                              int sampleRate) {
+        if (count < 1) {
+            throw new IllegalArgumentException("there has to be at least one carrier!");
+        }
+        int bin = getFFTBin(frequency, fftSize, sampleRate);
+        if (bin + (count - 1) * CARRIER_SPACING >= fftSize / 2) {
+            throw new IllegalArgumentException("can't fit " + count + " carriers above " +
+                    frequency + "Hz below half the sampleRate!");
+        }
+        int[] frequencies = new int[count];
+        frequencies[0] = frequency;
+        for (int i = 1; i < count; i++) {
+            frequencies[i] = (int) Math.round((bin + i * CARRIER_SPACING) * (double) sampleRate /
+                    fftSize);
+        }
+        return frequencies;
+    }
 }
@@ -0,0 +1,78 @@
+package com.dkarv.comframe.library.transport;
+
+/**
+ * puts the segments created by a {@link Segmenter} back together. segments have to arrive in
+ * order, if one is missing the message is dropped and we wait for the first segment of the next
+ * one. the memory used is bounded by {@link Segmenter#MAX_SEGMENTS} segments of at most 255
+ * payload bytes.
+ */
+public class Reassembler {
+    private byte[] message = new byte[256];
+    private int length = 0;
+    /**
+     * the index of the segment we expect next, -1 if we wait for the first one
+     */
+    private int expected = -1;
+    private int last;
+
+    /**
+     * @param segment the bytes received in one frame, may contain padding after the payload
+     * @param len     how many bytes of segment are valid
+     * @return true if the message is complete, get it with {@link #getMessage()}
+     */
+    public boolean add(byte[] segment, int len) {
+        if (len < Segmenter.HEADER_SIZE) {
+            expected = -1;
+            return false;
+        }
+        int index = segment[0] & 0xFF;
+        int lastIndex = segment[1] & 0xFF;
+        int payload = segment[2] & 0xFF;
+        if (payload > len - Segmenter.HEADER_SIZE || index > lastIndex) {
+            // broken header
+            expected = -1;
+            return false;
+        }
+        if (index == 0) {
+            // start of a new message, forget an unfinished one
+            length = 0;
+            last = lastIndex;
+        } else if (index != expected || lastIndex != last) {
+            // we missed a segment
+            expected = -1;
+            return false;
+        }
+
+        if (length + payload > message.length) {
+            byte[] bigger = new byte[Math.max(message.length * 2, length + payload)];
+            System.arraycopy(message, 0, bigger, 0, length);
+            message = bigger;
+        }
+        System.arraycopy(segment, Segmenter.HEADER_SIZE, message, length, payload);
+        length += payload;
+
+        if (index == last) {
+            expected = -1;
+            return true;
+        }
+        expected = index + 1;
+        return false;
+    }
+
+    /**
+     * @return a copy of the message completed by the last call to {@link #add(byte[], int)}
+     */
+    public byte[] getMessage() {
+        byte[] copy = new byte[length];
+        System.arraycopy(message, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * forget an unfinished message
+     */
+    public void reset() {
+        length = 0;
+        expected = -1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.dkarv.comframe.library.transport;
+
+/**
+ * splits a message into segments that fit into one frame each. every segment starts with a
+ * header of {@link #HEADER_SIZE} bytes:
+ * <pre>
+ * [index] [index of the last segment] [payload length] [payload ...]
+ * </pre>
+ * the indices are unsigned, so a message can be split into up to {@link #MAX_SEGMENTS} segments.
+ * {@link Reassembler} puts them back together on the receiver side.
+ */
+public class Segmenter {
+    public static final int HEADER_SIZE = 3;
+    public static final int MAX_SEGMENTS = 256;
+
+    /**
+     * how many payload bytes fit into one segment
+     */
+    private final int maxPayload;
+
+    /**
+     * @param maxSegmentSize the biggest segment, including the header, that fits into one frame
+     */
+    public Segmenter(int maxSegmentSize) {
+        // the payload length has to fit into one byte
+        maxPayload = Math.min(maxSegmentSize - HEADER_SIZE, 255);
+        if (maxPayload <= 0) {
+            throw new IllegalArgumentException("segments of " + maxSegmentSize + " bytes are too " +
+                    "small to carry any data!");
+        }
+    }
+
+    /**
+     * @param length of the message
+     * @return how many segments the message is split into
+     */
+    public int segmentCount(int length) {
+        int count = (length + maxPayload - 1) / maxPayload;
+        if (length <= 0 || count > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("the length of the data isn't allowed to be > " +
+                    MAX_SEGMENTS * maxPayload + " or zero bytes with the chosen HammingCode!");
+        }
+        return count;
+    }
+
+    /**
+     * @return the biggest message that can be sent
+     */
+    public int getMaxMessageSize() {
+        return MAX_SEGMENTS * maxPayload;
+    }
+
+    /**
+     * writes segment index of data to out
+     *
+     * @param out has to hold the header and the payload of the segment
+     * @return how many bytes were written to out
+     */
+    public int segment(byte[] data, int index, byte[] out) {
+        int count = segmentCount(data.length);
+        int offset = index * maxPayload;
+        int length = Math.min(maxPayload, data.length - offset);
+        out[0] = (byte) index;
+        out[1] = (byte) (count - 1);
+        out[2] = (byte) length;
+        System.arraycopy(data, offset, out, HEADER_SIZE, length);
+        return HEADER_SIZE + length;
+    }
+}
@@ -0,0 +1,81 @@
+package com.dkarv.comframe.library.fec;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * encodes random frames of random length, so the shortened codes are covered too, replaces up
+ * to paritySymbols / 2 random bytes by other random values and checks that every frame is
+ * restored
+ */
+public class ReedSolomonTest {
+    private static final int FRAMES = 2000;
+
+    @Test
+    public void correctsUpToHalfTheParity() {
+        int[] parities = {2, 3, 4, 16, 32, 254};
+        for (int parity : parities) {
+            check(parity, new Random(parity));
+        }
+    }
+
+    @Test
+    public void leavesTooManyErrorsUnchanged() {
+        ReedSolomonEncoder encoder = new ReedSolomonEncoder(4);
+        ReedSolomonDecoder decoder = new ReedSolomonDecoder(4);
+        byte[] data = new byte[100];
+        new Random(1).nextBytes(data);
+        byte[] encoded = new byte[104];
+        encoder.encode(data, data.length, encoded);
+        // three wrong bytes, one more than can be corrected
+        byte[] received = encoded.clone();
+        received[0] ^= 1;
+        received[50] ^= 0x80;
+        received[103] ^= 0xFF;
+        byte[] decoded = new byte[104];
+        decoder.decode(received, received.length * 8, decoded);
+        for (int i = 0; i < received.length; i++) {
+            assertEquals("byte " + i, received[i], decoded[i]);
+        }
+    }
+
+    private void check(int parity, Random random) {
+        ReedSolomonEncoder encoder = new ReedSolomonEncoder(parity);
+        ReedSolomonDecoder decoder = new ReedSolomonDecoder(parity);
+        byte[] data = new byte[255];
+        byte[] encoded = new byte[255];
+        byte[] received = new byte[255];
+        byte[] decoded = new byte[255];
+        boolean[] wrong = new boolean[255];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            int length = 1 + random.nextInt(255 - parity);
+            int n = length + parity;
+            random.nextBytes(data);
+            encoder.encode(data, length, encoded);
+
+            System.arraycopy(encoded, 0, received, 0, n);
+            for (int i = 0; i < n; i++) {
+                wrong[i] = false;
+            }
+            int errors = random.nextInt(parity / 2 + 1);
+            for (int e = 0; e < errors; e++) {
+                int pos;
+                do {
+                    pos = random.nextInt(n);
+                } while (wrong[pos]);
+                wrong[pos] = true;
+                // any other value, from one wrong bit up to all eight
+                received[pos] ^= 1 + random.nextInt(255);
+            }
+
+            String name = "RS" + parity + " frame " + frame + " with " + errors + " errors";
+            assertEquals(name, length, decoder.decode(received, n * 8, decoded));
+            for (int i = 0; i < n; i++) {
+                assertEquals(name + ", byte " + i, encoded[i], decoded[i]);
+            }
+        }
+    }
+}
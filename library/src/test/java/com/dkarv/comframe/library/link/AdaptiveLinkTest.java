@@ -0,0 +1,189 @@
+package com.dkarv.comframe.library.link;
+
+import com.dkarv.comframe.library.ComFrame;
+import com.dkarv.comframe.library.ComFrameReceiver;
+import com.dkarv.comframe.library.ComFrameSender;
+import com.dkarv.comframe.library.audio.LoopbackAudio;
+import com.dkarv.comframe.library.crc.CrcCode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * two links connected by a loopback in every direction, without any noise. the negotiation
+ * messages can be dropped on their way to see that the link recovers
+ */
+public class AdaptiveLinkTest {
+    private static final long GUARD_MILLIS = 100;
+    private static final long TIMEOUT_MILLIS = 1000;
+    private static final byte[] DATA = {1, 2, 3, 4, 5};
+
+    private LoopbackAudio aToB;
+    private LoopbackAudio bToA;
+    private Side a;
+    private Side b;
+
+    @Before
+    public void setUp() {
+        aToB = new LoopbackAudio();
+        bToA = new LoopbackAudio();
+        a = new Side(aToB, bToA);
+        b = new Side(bToA, aToB);
+    }
+
+    @After
+    public void tearDown() {
+        a.link.close();
+        b.link.close();
+        // a second close does nothing
+        a.link.close();
+    }
+
+    @Test
+    public void switchesToTheFastestProfile() throws InterruptedException {
+        a.link.negotiate();
+        // probe, report, switch and ack
+        assertTrue(a.awaitProfile(RateProfile.SYMBOL_64));
+        assertTrue(b.awaitProfile(RateProfile.SYMBOL_64));
+        assertEquals(Collections.singletonList(RateProfile.SYMBOL_64), a.changes);
+        assertEquals(Collections.singletonList(RateProfile.SYMBOL_64), b.changes);
+
+        a.link.send(DATA);
+        assertTrue(b.awaitMessage());
+        assertArrayEquals(DATA, b.messages.get(0));
+    }
+
+    @Test
+    public void fallsBackIfTheSwitchIsLost() throws InterruptedException {
+        a.drop = 4;
+        a.link.negotiate();
+        assertTrue(a.awaitChanges(2));
+        assertEquals(RateProfile.SYMBOL_64, a.changes.get(0));
+        assertEquals(RateProfile.SYMBOL_512, a.changes.get(1));
+        // b never left the base profile
+        assertTrue(b.changes.isEmpty());
+        assertEquals(RateProfile.SYMBOL_512, b.link.getProfile());
+
+        a.link.send(DATA);
+        assertTrue(b.awaitMessage());
+        assertArrayEquals(DATA, b.messages.get(0));
+    }
+
+    @Test
+    public void fallsBackIfTheAckIsLost() throws InterruptedException {
+        b.drop = 6;
+        a.link.negotiate();
+        assertTrue(a.awaitChanges(2));
+        assertEquals(RateProfile.SYMBOL_512, a.changes.get(1));
+        // the FALLBACK on the new profile brought b back too
+        assertTrue(b.awaitChanges(2));
+        assertEquals(RateProfile.SYMBOL_64, b.changes.get(0));
+        assertEquals(RateProfile.SYMBOL_512, b.changes.get(1));
+
+        b.link.send(DATA);
+        assertTrue(a.awaitMessage());
+        assertArrayEquals(DATA, a.messages.get(0));
+    }
+
+    private static class Side implements AdaptiveLink.Factory, AdaptiveLink.ProfileListener,
+            ComFrame.MessageListener {
+        final AdaptiveLink link;
+        final List<RateProfile> changes =
+                Collections.synchronizedList(new ArrayList<RateProfile>());
+        final List<byte[]> messages = Collections.synchronizedList(new ArrayList<byte[]>());
+        private final LoopbackAudio out;
+        private final LoopbackAudio in;
+        /**
+         * the first message of this type isn't sent, -1 to send all
+         */
+        volatile int drop = -1;
+
+        Side(LoopbackAudio out, LoopbackAudio in) {
+            this.out = out;
+            this.in = in;
+            link = new AdaptiveLink(this, RateProfile.SYMBOL_512);
+            link.setGuardTime(GUARD_MILLIS);
+            link.setTimeout(TIMEOUT_MILLIS);
+            link.setProfileListener(this);
+            link.setMsgListener(this);
+            link.start();
+        }
+
+        @Override
+        public ComFrameSender createSender(RateProfile profile) {
+            ComFrameSender sender = new ComFrameSender() {
+                @Override
+                public void send(byte[] data) {
+                    if (data[0] == drop) {
+                        drop = -1;
+                        return;
+                    }
+                    super.send(data);
+                }
+            };
+            sender.setAudioSink(out.getSink());
+            sender.setCrcCode(CrcCode.CRC_16);
+            return sender;
+        }
+
+        @Override
+        public ComFrameReceiver createReceiver(RateProfile profile) {
+            ComFrameReceiver receiver = new ComFrameReceiver();
+            receiver.setAudioSource(in.getSource());
+            receiver.setCrcCode(CrcCode.CRC_16);
+            return receiver;
+        }
+
+        @Override
+        public void onProfileChanged(RateProfile profile) {
+            changes.add(profile);
+        }
+
+        @Override
+        public void onMessageReceived(byte[] msg) {
+            messages.add(msg);
+        }
+
+        boolean awaitProfile(RateProfile profile) throws InterruptedException {
+            long end = System.currentTimeMillis() + 4 * TIMEOUT_MILLIS;
+            while (link.getProfile() != profile || changes.isEmpty()) {
+                if (System.currentTimeMillis() > end) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+
+        boolean awaitChanges(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + 4 * TIMEOUT_MILLIS;
+            while (changes.size() < count) {
+                if (System.currentTimeMillis() > end) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+
+        boolean awaitMessage() throws InterruptedException {
+            long end = System.currentTimeMillis() + 4 * TIMEOUT_MILLIS;
+            while (messages.isEmpty()) {
+                if (System.currentTimeMillis() > end) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+    }
+}